@@ -4,6 +4,9 @@ import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
 import android.util.Log;
+import com.snagotp.core.ExtractionMetrics;
+import com.snagotp.core.MessageFingerprint;
+import com.snagotp.core.TraceBuffer;
 
 /**
  * Helper class for clipboard operations
@@ -12,7 +15,7 @@ import android.util.Log;
  */
 public class ClipboardHelper {
     private static final String TAG = "ClipboardHelper";
-    private static final String CLIP_LABEL = "OTP";
+    static final String CLIP_LABEL = "OTP";
 
     /**
      * Copy text to the system clipboard
@@ -42,16 +45,40 @@ public class ClipboardHelper {
                 return false;
             }
 
+            return copyToClipboard(clipboardManager, text);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error copying to clipboard: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Copy text using an already obtained ClipboardManager
+     * Used by ClipboardWriter, which caches the manager
+     *
+     * @param clipboardManager Clipboard manager
+     * @param text Text to copy (OTP code)
+     * @return true if successfully copied, false otherwise
+     */
+    static boolean copyToClipboard(ClipboardManager clipboardManager, String text) {
+        try {
             // Create clip data with the OTP text
             ClipData clipData = ClipData.newPlainText(CLIP_LABEL, text);
             
             // Set clip data to clipboard
+            long startNanos = System.nanoTime();
             clipboardManager.setPrimaryClip(clipData);
-            
-            Log.i(TAG, "Text copied to clipboard: " + text);
+            ExtractionMetrics.getInstance().recordClipboardWrite(System.nanoTime() - startNanos);
+
+            // Traced rather than logged, so the code itself never reaches logcat
+            TraceBuffer.getInstance().record(TraceBuffer.CLIPBOARD_WRITTEN, 0, 0, text.length(),
+                    MessageFingerprint.of(text));
             return true;
 
         } catch (Exception e) {
+            TraceBuffer.getInstance().record(TraceBuffer.CLIPBOARD_FAILED, 0, 0, text.length(),
+                    MessageFingerprint.of(text));
             Log.e(TAG, "Error copying to clipboard: " + e.getMessage(), e);
             return false;
         }
@@ -120,6 +147,22 @@ public class ClipboardHelper {
                 return false;
             }
 
+            return clearClipboard(clipboardManager);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error clearing clipboard: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Clear the clipboard using an already obtained ClipboardManager
+     *
+     * @param clipboardManager Clipboard manager
+     * @return true if successfully cleared, false otherwise
+     */
+    static boolean clearClipboard(ClipboardManager clipboardManager) {
+        try {
             // Clear clipboard by setting empty clip data
             ClipData clipData = ClipData.newPlainText("", "");
             clipboardManager.setPrimaryClip(clipData);
@@ -0,0 +1,247 @@
+package com.snagotp.app;
+
+import android.content.ClipData;
+import android.content.ClipDescription;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.util.Log;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared clipboard writer for extracted OTPs
+ * Caches the ClipboardManager, coalesces OTPs that arrive within a short window so only the newest
+ * is written, and runs a single auto-clear timer that is pushed back on every write
+ * The timer only clears a clip that is still ours: a clipboard listener cancels it as soon as anyone
+ * else changes the clip, and the clear is skipped when the clip cannot be read
+ *
+ * Auto-clear therefore only works while the app is in the foreground. On Android 10 and later a
+ * background app can neither read the clipboard nor receive its change callbacks, so it cannot tell
+ * whether the clip is still the OTP or something the user copied since. The clear is then skipped and
+ * the OTP stays on the clipboard until something else replaces it. That is the usual case, since the
+ * user is normally in another app when an OTP arrives
+ */
+public final class ClipboardWriter {
+    private static final String TAG = "ClipboardWriter";
+
+    /** OTPs submitted within this window are merged into one clipboard write */
+    public static final long COALESCE_WINDOW_MILLIS = 250;
+    /** The OTP is removed from the clipboard this long after the last write */
+    public static final long AUTO_CLEAR_DELAY_MILLIS = 60 * 1000;
+
+    /**
+     * Notified on the writer thread after a clipboard write completes
+     */
+    public interface Callback {
+        void onClipboardWrite(String text, boolean copied);
+    }
+
+    private static volatile ClipboardWriter instance;
+
+    private final ClipboardManager clipboardManager;
+    private final ScheduledExecutorService scheduler;
+    private final long autoClearDelayMillis;
+
+    // Guarded by this
+    private String pendingText;
+    private Callback pendingCallback;
+    private ScheduledFuture<?> pendingWrite;
+    private ScheduledFuture<?> autoClear;
+    private String copiedText;
+    private boolean listening;
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable clearTask = new Runnable() {
+        @Override
+        public void run() {
+            clear();
+        }
+    };
+
+    // Registered while an auto-clear is pending; called on the main thread
+    private final ClipboardManager.OnPrimaryClipChangedListener clipChangedListener =
+            new ClipboardManager.OnPrimaryClipChangedListener() {
+                @Override
+                public void onPrimaryClipChanged() {
+                    onClipChanged();
+                }
+            };
+
+    /**
+     * @param context Any context; the application context is used
+     * @return The shared writer
+     */
+    public static ClipboardWriter getInstance(Context context) {
+        ClipboardWriter result = instance;
+        if (result == null) {
+            synchronized (ClipboardWriter.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new ClipboardWriter(context.getApplicationContext());
+                }
+            }
+        }
+        return result;
+    }
+
+    private ClipboardWriter(Context context) {
+        this(context, AUTO_CLEAR_DELAY_MILLIS);
+    }
+
+    /**
+     * A writer of its own, for tests that cannot wait for the default delay
+     *
+     * @param context Any context
+     * @param autoClearDelayMillis Time after the last write at which the OTP is cleared
+     */
+    ClipboardWriter(Context context, long autoClearDelayMillis) {
+        this.autoClearDelayMillis = autoClearDelayMillis;
+        clipboardManager = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("SnagOTP-clipboard");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Rescheduling the auto-clear timer cancels the old one; don't keep it queued
+        executor.setRemoveOnCancelPolicy(true);
+        scheduler = executor;
+    }
+
+    /**
+     * Queue an OTP for the clipboard
+     * If another OTP arrives within the coalescing window, only the newer one is written
+     * and only its callback is invoked
+     *
+     * @param text OTP to copy
+     * @param callback Notified after the write, may be null
+     */
+    public synchronized void submit(String text, Callback callback) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        pendingText = text;
+        pendingCallback = callback;
+        if (pendingWrite == null) {
+            pendingWrite = scheduler.schedule(writeTask, COALESCE_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        String text;
+        Callback callback;
+        synchronized (this) {
+            text = pendingText;
+            callback = pendingCallback;
+            pendingText = null;
+            pendingCallback = null;
+            pendingWrite = null;
+        }
+        if (text == null) {
+            return;
+        }
+
+        boolean copied = clipboardManager != null && ClipboardHelper.copyToClipboard(clipboardManager, text);
+        if (copied) {
+            synchronized (this) {
+                if (autoClear != null) {
+                    autoClear.cancel(false);
+                }
+                autoClear = scheduler.schedule(clearTask, autoClearDelayMillis, TimeUnit.MILLISECONDS);
+                copiedText = text;
+                startListening();
+            }
+        }
+        if (callback != null) {
+            callback.onClipboardWrite(text, copied);
+        }
+    }
+
+    private void clear() {
+        String text;
+        synchronized (this) {
+            text = copiedText;
+            autoClear = null;
+            copiedText = null;
+            stopListening();
+        }
+        if (clipboardManager == null || text == null) {
+            return;
+        }
+        // Leave the clipboard alone unless it provably still holds our OTP
+        if (!isOwnClip(text)) {
+            Log.d(TAG, "Clipboard changed or unreadable since OTP was copied, not clearing");
+            return;
+        }
+        ClipboardHelper.clearClipboard(clipboardManager);
+    }
+
+    private void onClipChanged() {
+        String text;
+        synchronized (this) {
+            text = copiedText;
+        }
+        // Our own writes are reported too
+        if (text == null || isOwnClip(text)) {
+            return;
+        }
+        synchronized (this) {
+            // A newer OTP may have been written meanwhile; it gets its own notification
+            if (!text.equals(copiedText)) {
+                return;
+            }
+            if (autoClear != null) {
+                autoClear.cancel(false);
+                autoClear = null;
+            }
+            copiedText = null;
+            stopListening();
+        }
+        Log.d(TAG, "Clipboard changed since OTP was copied, auto-clear cancelled");
+    }
+
+    /**
+     * @param text The OTP last written
+     * @return true if the clip can be read, carries our label and still holds that OTP
+     */
+    private boolean isOwnClip(String text) {
+        ClipDescription description = clipboardManager.getPrimaryClipDescription();
+        CharSequence label = description != null ? description.getLabel() : null;
+        if (label == null || !ClipboardHelper.CLIP_LABEL.contentEquals(label)) {
+            return false;
+        }
+        ClipData clip = clipboardManager.getPrimaryClip();
+        CharSequence current = clip != null && clip.getItemCount() > 0 ? clip.getItemAt(0).getText() : null;
+        return current != null && text.contentEquals(current);
+    }
+
+    // Guarded by this
+    private void startListening() {
+        if (!listening) {
+            clipboardManager.addPrimaryClipChangedListener(clipChangedListener);
+            listening = true;
+        }
+    }
+
+    // Guarded by this
+    private void stopListening() {
+        if (listening) {
+            clipboardManager.removePrimaryClipChangedListener(clipChangedListener);
+            listening = false;
+        }
+    }
+}
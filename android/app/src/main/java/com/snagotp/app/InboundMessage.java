@@ -0,0 +1,83 @@
+package com.snagotp.app;
+
+/**
+ * A message from any input source, normalized for the extraction pipeline
+ * The body may be a view over several parts rather than one string
+ */
+public final class InboundMessage {
+    /**
+     * Where a message came from
+     */
+    public enum Source {
+        /** SMS_RECEIVED broadcast */
+        SMS,
+        /** Notification posted by a messaging app, e.g. RCS chats in Google Messages */
+        NOTIFICATION,
+        /** Injected locally by tests or debug tools */
+        TEST
+    }
+
+    private final Source source;
+    private final String sender;
+    private final CharSequence body;
+    private final long timestampMillis;
+    private final boolean late;
+
+    /**
+     * @param source Input source
+     * @param sender Originating address or conversation name, or null if unknown
+     * @param body Message body
+     * @param timestampMillis Time the message was received
+     */
+    public InboundMessage(Source source, String sender, CharSequence body, long timestampMillis) {
+        this(source, sender, body, timestampMillis, false);
+    }
+
+    /**
+     * @param source Input source
+     * @param sender Originating address or conversation name, or null if unknown
+     * @param body Message body
+     * @param timestampMillis Time the message was received
+     * @param late true if the message is handled well after it arrived, e.g. the parts of a multipart SMS
+     *             whose other parts never came; its code is recorded but not copied
+     */
+    public InboundMessage(Source source, String sender, CharSequence body, long timestampMillis, boolean late) {
+        if (source == null || body == null) {
+            throw new IllegalArgumentException("source and body are required");
+        }
+        this.source = source;
+        this.sender = sender;
+        this.body = body;
+        this.timestampMillis = timestampMillis;
+        this.late = late;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * @return Originating address or conversation name, or null if unknown
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    public CharSequence getBody() {
+        return body;
+    }
+
+    /**
+     * @return Time the message was received, in milliseconds since the epoch
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return true if the message is handled well after it arrived and its code must not be copied
+     */
+    public boolean isLate() {
+        return late;
+    }
+}
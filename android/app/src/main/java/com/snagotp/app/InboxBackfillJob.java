@@ -0,0 +1,226 @@
+package com.snagotp.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.snagotp.core.BatchExtractor;
+import com.snagotp.core.InboxBackfill;
+import com.snagotp.core.MessageFingerprint;
+import com.snagotp.core.MessageRecord;
+import com.snagotp.core.OtpHistoryRing;
+import com.snagotp.core.OtpMatch;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+/**
+ * Fills the OTP history from SMS already in the inbox
+ * Runs an {@link InboxBackfill} on a background thread; the last processed _id is kept in
+ * preferences once the OTPs up to it are on disk, so each launch only scans messages that arrived
+ * since the previous run and a record lost in a failed write is found again
+ * Cancelled when the app goes away and resumed from the checkpoint on the next start
+ */
+public final class InboxBackfillJob {
+    private static final String TAG = "InboxBackfillJob";
+    private static final String PREFS_NAME = "inbox_backfill";
+    private static final String KEY_LAST_ID = "last_id";
+    private static final long APPEND_TIMEOUT_MILLIS = 5000;
+    private static final long COMMIT_TIMEOUT_MILLIS = 10000;
+
+    private static InboxBackfill current;
+
+    private InboxBackfillJob() {
+    }
+
+    /**
+     * Start a backfill run unless one is already going
+     * Requires READ_SMS; without it the run fails and is retried on the next start
+     *
+     * @param context Any context; the application context is used
+     */
+    public static synchronized void start(Context context) {
+        if (current != null) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final HistorySink sink = new HistorySink(OtpHistoryJournal.getInstance(appContext),
+                OtpHistoryIndex.getInstance(appContext), OtpStatisticsStore.getInstance(appContext));
+
+        final InboxBackfill backfill = new InboxBackfill(
+                new SmsProviderSource(appContext.getContentResolver()),
+                new PreferencesCheckpoint(appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)),
+                sink,
+                new BatchExtractor(),
+                InboxBackfill.DEFAULT_PAGE_SIZE);
+        current = backfill;
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OtpRuleSettings.ensureLoaded(appContext);
+                    sink.prepare();
+                    boolean complete = backfill.run();
+                    Log.i(TAG, (complete ? "Backfill complete: " : "Backfill cancelled: ")
+                            + backfill.getScannedCount() + " messages, " + backfill.getFoundCount() + " OTPs");
+                } catch (IOException e) {
+                    Log.w(TAG, "Backfill stopped: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Log.w(TAG, "Backfill interrupted");
+                } finally {
+                    finished(backfill);
+                }
+            }
+        }, "SnagOTP-backfill");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the running backfill after its current page; the next start resumes from there
+     */
+    public static synchronized void cancel() {
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private static synchronized void finished(InboxBackfill backfill) {
+        if (current == backfill) {
+            current = null;
+        }
+    }
+
+    /**
+     * Appends backfilled OTPs to the history, skipping messages the receiver already handled live
+     */
+    private static final class HistorySink implements InboxBackfill.Sink {
+        private final OtpHistoryJournal journal;
+        private final OtpHistoryIndex index;
+        private final OtpStatisticsStore statistics;
+        private KnownMessages known;
+        private long commitMark;
+
+        HistorySink(OtpHistoryJournal journal, OtpHistoryIndex index, OtpStatisticsStore statistics) {
+            this.journal = journal;
+            this.index = index;
+            this.statistics = statistics;
+        }
+
+        /**
+         * Wait for the history index to load; runs on the backfill thread before the scan
+         */
+        void prepare() throws InterruptedException {
+            index.awaitLoaded();
+            known = new KnownMessages(index.getRing());
+            commitMark = journal.getCommitMark();
+        }
+
+        @Override
+        public boolean onOtp(MessageRecord message, OtpMatch match) {
+            long messageHash = MessageFingerprint.of(message.getBody());
+            if (known.contains(messageHash)) {
+                return true;
+            }
+            OtpRecord record = new OtpRecord(match.getCode(), message.getSender(), message.getTimestampMillis(),
+                    match.getPatternIndex(), messageHash);
+            try {
+                // Wait for the journal writer rather than drop history
+                if (!journal.append(record, APPEND_TIMEOUT_MILLIS)) {
+                    Log.w(TAG, "History queue stayed full, stopping before this record");
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            index.add(record);
+            statistics.record(record);
+            return true;
+        }
+
+        @Override
+        public boolean commit() throws IOException {
+            try {
+                if (!journal.awaitCommitted(commitMark, COMMIT_TIMEOUT_MILLIS)) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for history to be written");
+            }
+            commitMark = journal.getCommitMark();
+            return true;
+        }
+    }
+
+    /**
+     * Fingerprints of the messages behind the records in the history ring
+     * A sorted snapshot answers most lookups; rows added since are scanned directly until there are
+     * enough of them to take a new snapshot. Nothing is read from the journal.
+     */
+    private static final class KnownMessages {
+        private static final int MAX_UNSORTED = 1024;
+
+        private final OtpHistoryRing ring;
+        private long[] sorted;
+        private int sortedEnd;
+
+        KnownMessages(OtpHistoryRing ring) {
+            this.ring = ring;
+            synchronized (ring) {
+                snapshot();
+            }
+        }
+
+        boolean contains(long messageHash) {
+            synchronized (ring) {
+                int end = ring.getEndSequence();
+                if (end - sortedEnd > MAX_UNSORTED) {
+                    snapshot();
+                }
+                if (Arrays.binarySearch(sorted, messageHash) >= 0) {
+                    return true;
+                }
+                for (int sequence = Math.max(sortedEnd, ring.getFirstSequence()); sequence < end; sequence++) {
+                    if (ring.getMessageHash(sequence) == messageHash) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+
+        // Called with the ring locked
+        private void snapshot() {
+            int first = ring.getFirstSequence();
+            int end = ring.getEndSequence();
+            long[] hashes = new long[end - first];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = ring.getMessageHash(first + i);
+            }
+            Arrays.sort(hashes);
+            sorted = hashes;
+            sortedEnd = end;
+        }
+    }
+
+    private static final class PreferencesCheckpoint implements InboxBackfill.Checkpoint {
+        private final SharedPreferences preferences;
+
+        PreferencesCheckpoint(SharedPreferences preferences) {
+            this.preferences = preferences;
+        }
+
+        @Override
+        public long load() {
+            return preferences.getLong(KEY_LAST_ID, 0);
+        }
+
+        @Override
+        public void save(long lastId) {
+            preferences.edit().putLong(KEY_LAST_ID, lastId).apply();
+        }
+    }
+}
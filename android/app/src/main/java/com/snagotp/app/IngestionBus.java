@@ -0,0 +1,221 @@
+package com.snagotp.app;
+
+import android.content.Context;
+import android.util.Log;
+import com.snagotp.core.ExtractionMetrics;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single-consumer event loop for incoming messages from every source
+ * The SMS receiver, the messaging notification listener and local test injection all post here;
+ * one worker decodes each event into an {@link InboundMessage} and runs it through {@link MessagePipeline},
+ * so messages are handled one at a time in arrival order whatever their source
+ * The queue is bounded: when it is full the oldest waiting event is dropped and counted in {@link ExtractionMetrics},
+ * so producers, the main thread included, never wait and never run an event themselves
+ */
+final class IngestionBus {
+    private static final String TAG = "IngestionBus";
+    /** Events waiting for the worker before the oldest is dropped */
+    static final int QUEUE_CAPACITY = 64;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static volatile ExecutorService executor;
+    // Holds delayed tasks until they are due, then hands them to the worker
+    private static volatile ScheduledExecutorService timer;
+
+    /**
+     * Source-specific decoding, run on the worker so producers return quickly
+     */
+    interface Event {
+        /**
+         * @return The decoded message, or null if there is nothing to process
+         */
+        InboundMessage read();
+    }
+
+    private IngestionBus() {
+        // Utility class
+    }
+
+    /**
+     * Queue a message that needs no decoding
+     *
+     * @param context Any context; the application context is used
+     * @param message Message to process
+     */
+    static void post(Context context, final InboundMessage message) {
+        post(context, new Event() {
+            @Override
+            public InboundMessage read() {
+                return message;
+            }
+        }, null);
+    }
+
+    /**
+     * Queue an event
+     *
+     * @param context Any context; the application context is used
+     * @param event Decodes the message on the worker
+     * @param onDone Run after the message has been processed, or once it is dropped from a full queue,
+     *               e.g. to finish a broadcast; may be null
+     */
+    static void post(Context context, Event event, Runnable onDone) {
+        execute(new Delivery(context.getApplicationContext(), event, onDone));
+    }
+
+    /**
+     * Run a task on the worker after everything already queued
+     * Like any event, the task is dropped if it is still waiting when the queue overflows
+     * Tests use a marker task to wait until the queue has drained
+     *
+     * @param task Work to run
+     */
+    static void execute(Runnable task) {
+        getExecutor().execute(task);
+    }
+
+    /**
+     * Run a task on the worker once a delay has passed
+     * The delay is kept by a timer thread, so a waiting task holds no queue slot
+     *
+     * @param task Work to run
+     * @param delayMillis Time to wait first
+     */
+    static void executeLater(final Runnable task, long delayMillis) {
+        getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                execute(task);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static ScheduledExecutorService getTimer() {
+        ScheduledExecutorService result = timer;
+        if (result == null) {
+            synchronized (IngestionBus.class) {
+                result = timer;
+                if (result == null) {
+                    ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1,
+                            new WorkerThreadFactory("SnagOTP-ingest-timer-"));
+                    pool.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+                    // The thread only stays while a task is waiting
+                    pool.allowCoreThreadTimeOut(true);
+                    timer = result = pool;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static ExecutorService getExecutor() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (IngestionBus.class) {
+                result = executor;
+                if (result == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1,
+                            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                            new WorkerThreadFactory("SnagOTP-ingest-"),
+                            new DropOldest());
+                    // Let the worker exit when idle so a cold receiver process can die normally
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = result = pool;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * One posted event, decoded and processed on the worker
+     */
+    private static final class Delivery implements Runnable {
+        private final Context context;
+        private final Event event;
+        private final Runnable onDone;
+
+        Delivery(Context context, Event event, Runnable onDone) {
+            this.context = context;
+            this.event = event;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public void run() {
+            try {
+                InboundMessage message = event.read();
+                if (message != null) {
+                    MessagePipeline.process(context, message);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error processing message: " + e.getMessage(), e);
+            } finally {
+                finish();
+            }
+        }
+
+        /**
+         * Release the producer's hold, e.g. a pending broadcast, without processing the event
+         */
+        void finish() {
+            if (onDone != null) {
+                onDone.run();
+            }
+        }
+    }
+
+    /**
+     * Overflow for a full queue: make room by dropping the oldest waiting event
+     * The newest message is the one whose OTP the user is waiting for; a dropped event still has its
+     * onDone run, so a broadcast kept alive with goAsync() is finished rather than left to time out
+     */
+    private static final class DropOldest implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                drop(task);
+                return;
+            }
+            Runnable oldest = pool.getQueue().poll();
+            if (oldest != null) {
+                drop(oldest);
+            }
+            pool.execute(task);
+        }
+
+        private static void drop(Runnable task) {
+            ExtractionMetrics.getInstance().recordIngestionDrop();
+            Log.w(TAG, "Ingestion queue full, dropped oldest event");
+            if (task instanceof Delivery) {
+                ((Delivery) task).finish();
+            }
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        WorkerThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
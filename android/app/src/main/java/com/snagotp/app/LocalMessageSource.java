@@ -0,0 +1,24 @@
+package com.snagotp.app;
+
+import android.content.Context;
+
+/**
+ * Test source of the {@link IngestionBus}: injects messages in-process, without the telephony stack
+ * or a messaging app, for tests and debug tooling
+ */
+public final class LocalMessageSource {
+    private LocalMessageSource() {
+    }
+
+    /**
+     * Queue a message as if it had just been received
+     *
+     * @param context Any context
+     * @param sender Originating address, may be null
+     * @param body Message body
+     * @param timestampMillis Receive time
+     */
+    public static void inject(Context context, String sender, CharSequence body, long timestampMillis) {
+        IngestionBus.post(context, new InboundMessage(InboundMessage.Source.TEST, sender, body, timestampMillis));
+    }
+}
@@ -1,15 +1,15 @@
 package com.snagotp.app;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.ActionBarDrawerToggle;
@@ -20,6 +20,7 @@ import androidx.core.content.ContextCompat;
 import androidx.core.view.GravityCompat;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
 import com.google.android.material.navigation.NavigationView;
 
@@ -31,14 +32,14 @@ import com.google.android.material.navigation.NavigationView;
 public class MainActivity extends AppCompatActivity implements NavigationView.OnNavigationItemSelectedListener {
     private static final String TAG = "MainActivity";
     private static final int SMS_PERMISSION_REQUEST_CODE = 100;
+    private static final String STATE_CURRENT_TAG = "current_fragment_tag";
     
     private DrawerLayout drawerLayout;
     private NavigationView navigationView;
     private Toolbar toolbar;
-    
-    // BroadcastReceiver for SMS
-    private SmsReceiver smsReceiver;
-    private boolean isReceiverRegistered = false;
+
+    // Tag of the fragment currently shown; the others stay alive but hidden
+    private String currentFragmentTag;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -64,29 +65,65 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         
         // Load default fragment (Home)
         if (savedInstanceState == null) {
-            loadFragment(new HomeFragment());
+            showFragment(R.id.nav_home);
             navigationView.setCheckedItem(R.id.nav_home);
+        } else {
+            currentFragmentTag = savedInstanceState.getString(STATE_CURRENT_TAG);
         }
         
-        // Initialize SMS receiver for OTP detection
-        initializeSmsReceiver();
-        
-        // Check and request SMS permissions
+        // Permission setup waits until the first frame is on screen
+        View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnDrawListener(new FirstDrawListener(content));
+    }
+
+    /**
+     * Deferred startup work, run once after the first frame has been drawn
+     */
+    private void onFirstFrameDrawn() {
+        // Start rebuilding the history index and loading the searchable history in the background
+        OtpHistoryJournal.getInstance(this);
+        OtpHistoryIndex.getInstance(this);
+        OtpStatisticsStore.getInstance(this);
+
+        // Check and request SMS permissions; SmsReceiver is declared in the manifest
         checkSmsPermissions();
     }
 
     /**
-     * Initialize the SMS broadcast receiver
+     * Waits for the first draw, then runs the deferred startup work on the next loop iteration
+     * (the view tree must not be changed from inside onDraw)
      */
-    private void initializeSmsReceiver() {
-        try {
-            smsReceiver = new SmsReceiver();
-            Log.i(TAG, "SMS Receiver initialized");
-        } catch (Exception e) {
-            Log.e(TAG, "Error initializing SMS receiver: " + e.getMessage(), e);
+    private final class FirstDrawListener implements ViewTreeObserver.OnDrawListener, Runnable {
+        private final View view;
+        private boolean drawn;
+
+        FirstDrawListener(View view) {
+            this.view = view;
+        }
+
+        @Override
+        public void onDraw() {
+            if (!drawn) {
+                drawn = true;
+                view.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            view.getViewTreeObserver().removeOnDrawListener(this);
+            if (!isFinishing() && !isDestroyed()) {
+                onFirstFrameDrawn();
+            }
         }
     }
 
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_CURRENT_TAG, currentFragmentTag);
+    }
+
     /**
      * Check if SMS permissions are granted, request if not
      */
@@ -103,51 +140,22 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
                         new String[]{Manifest.permission.RECEIVE_SMS, Manifest.permission.READ_SMS},
                         SMS_PERMISSION_REQUEST_CODE);
             } else {
-                // Permission already granted, register receiver
                 Log.i(TAG, "SMS permission already granted");
-                registerSmsReceiver();
+                startInboxBackfill();
             }
         } else {
             // For older Android versions, permissions are granted at install time
-            registerSmsReceiver();
-        }
-    }
-
-    /**
-     * Register the SMS broadcast receiver
-     */
-    private void registerSmsReceiver() {
-        if (smsReceiver != null && !isReceiverRegistered) {
-            try {
-                IntentFilter filter = new IntentFilter();
-                filter.addAction("android.provider.Telephony.SMS_RECEIVED");
-                filter.setPriority(Integer.MAX_VALUE);
-                
-                // Register receiver
-                registerReceiver(smsReceiver, filter);
-                isReceiverRegistered = true;
-                
-                Log.i(TAG, "SMS Receiver registered successfully");
-                Toast.makeText(this, "OTP auto-detection enabled", Toast.LENGTH_SHORT).show();
-            } catch (Exception e) {
-                Log.e(TAG, "Error registering SMS receiver: " + e.getMessage(), e);
-                Toast.makeText(this, "Failed to enable OTP detection", Toast.LENGTH_SHORT).show();
-            }
+            startInboxBackfill();
         }
     }
 
     /**
-     * Unregister the SMS broadcast receiver
+     * Pick up OTPs already in the inbox; only messages newer than the last run are scanned
      */
-    private void unregisterSmsReceiver() {
-        if (smsReceiver != null && isReceiverRegistered) {
-            try {
-                unregisterReceiver(smsReceiver);
-                isReceiverRegistered = false;
-                Log.i(TAG, "SMS Receiver unregistered");
-            } catch (Exception e) {
-                Log.e(TAG, "Error unregistering SMS receiver: " + e.getMessage(), e);
-            }
+    private void startInboxBackfill() {
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.READ_SMS)
+                == PackageManager.PERMISSION_GRANTED) {
+            InboxBackfillJob.start(this);
         }
     }
 
@@ -163,8 +171,7 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
                 Log.i(TAG, "SMS permission granted by user");
                 Toast.makeText(this, "SMS permission granted. OTP auto-detection enabled.", Toast.LENGTH_LONG).show();
                 
-                // Register the receiver now that permission is granted
-                registerSmsReceiver();
+                startInboxBackfill();
             } else {
                 Log.w(TAG, "SMS permission denied by user");
                 Toast.makeText(this, "SMS permission denied. OTP auto-detection disabled.", Toast.LENGTH_LONG).show();
@@ -174,75 +181,92 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
 
     @Override
     public boolean onNavigationItemSelected(@NonNull MenuItem item) {
-        Fragment fragment = null;
-        int itemId = item.getItemId();
+        showFragment(item.getItemId());
         
+        drawerLayout.closeDrawer(GravityCompat.START);
+        return true;
+    }
+
+    /**
+     * Create the fragment for a drawer item
+     *
+     * @return The new fragment, or null if the item has no screen
+     */
+    private Fragment createFragment(int itemId) {
         if (itemId == R.id.nav_home) {
-            fragment = new HomeFragment();
+            return new HomeFragment();
         } else if (itemId == R.id.nav_snags) {
-            fragment = new SnagsFragment();
+            return new SnagsFragment();
         } else if (itemId == R.id.nav_settings) {
-            fragment = new SettingsFragment();
+            return new SettingsFragment();
+        } else if (itemId == R.id.nav_metrics) {
+            return new MetricsFragment();
         } else if (itemId == R.id.nav_help) {
-            fragment = new HelpFragment();
-        }
-        
-        if (fragment != null) {
-            loadFragment(fragment);
+            return new HelpFragment();
         }
-        
-        drawerLayout.closeDrawer(GravityCompat.START);
-        return true;
+        return null;
     }
 
-    private void loadFragment(Fragment fragment) {
-        FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
-        transaction.replace(R.id.fragment_container, fragment);
-        transaction.commit();
-    }
+    /**
+     * Show the screen for a drawer item
+     * Each screen is created once and then hidden/shown, so switching back does not re-inflate it
+     */
+    private void showFragment(int itemId) {
+        String tag = fragmentTag(itemId);
+        if (tag.equals(currentFragmentTag)) {
+            return;
+        }
 
-    @Override
-    public void onBackPressed() {
-        if (drawerLayout.isDrawerOpen(GravityCompat.START)) {
-            drawerLayout.closeDrawer(GravityCompat.START);
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        Fragment target = fragmentManager.findFragmentByTag(tag);
+        FragmentTransaction transaction = fragmentManager.beginTransaction();
+        transaction.setReorderingAllowed(true);
+
+        if (target == null) {
+            target = createFragment(itemId);
+            if (target == null) {
+                return;
+            }
+            transaction.add(R.id.fragment_container, target, tag);
         } else {
-            super.onBackPressed();
+            transaction.show(target);
+        }
+
+        Fragment current = currentFragmentTag != null ? fragmentManager.findFragmentByTag(currentFragmentTag) : null;
+        if (current != null) {
+            transaction.hide(current);
         }
+
+        transaction.commit();
+        currentFragmentTag = tag;
     }
 
     /**
-     * Unregister receiver when activity is paused to save resources
+     * @return Tag the screen for a drawer item is added under
      */
-    @Override
-    protected void onPause() {
-        super.onPause();
-        // Optional: Unregister receiver when app is in background
-        // Comment out if you want OTP detection to work in background
-        // unregisterSmsReceiver();
+    static String fragmentTag(int itemId) {
+        return "nav_" + itemId;
     }
 
-    /**
-     * Re-register receiver when activity resumes
-     */
     @Override
-    protected void onResume() {
-        super.onResume();
-        // Re-register if needed
-        if (smsReceiver != null && !isReceiverRegistered) {
-            if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECEIVE_SMS)
-                    == PackageManager.PERMISSION_GRANTED) {
-                registerSmsReceiver();
-            }
+    public void onBackPressed() {
+        if (drawerLayout.isDrawerOpen(GravityCompat.START)) {
+            drawerLayout.closeDrawer(GravityCompat.START);
+        } else {
+            super.onBackPressed();
         }
     }
 
     /**
-     * Clean up receiver when activity is destroyed
+     * Stop the inbox backfill when the activity goes away; live capture does not depend on it
      */
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        unregisterSmsReceiver();
-        Log.i(TAG, "MainActivity destroyed, SMS receiver cleaned up");
+        if (!isChangingConfigurations()) {
+            // Resumed from its checkpoint on the next start
+            InboxBackfillJob.cancel();
+        }
+        Log.i(TAG, "MainActivity destroyed");
     }
 }
@@ -0,0 +1,127 @@
+package com.snagotp.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.widget.Toast;
+import com.snagotp.core.DedupCache;
+import com.snagotp.core.MessageFingerprint;
+import com.snagotp.core.OtpExtractor;
+import com.snagotp.core.OtpMatch;
+import com.snagotp.core.SenderTemplateCache;
+import com.snagotp.core.TraceBuffer;
+
+/**
+ * The one extraction path for messages from every source
+ * Prefilter, dedup, extraction, history and clipboard, in that order; runs on the {@link IngestionBus} worker
+ * Dedup state is shared, so an SMS that also shows up as a messaging-app notification is handled once
+ * A code seen recently is neither recorded nor copied again, whichever message carried it
+ * A late message only goes to history: by the time it is handled its code has likely expired, and it must not
+ * replace whatever the user has copied since
+ * Each step is recorded in the {@link TraceBuffer} rather than logged, so neither codes nor bodies reach logcat
+ */
+final class MessagePipeline {
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    // Repeats of the same message (second channel, resend) within this window are dropped
+    private static final long DEDUP_TTL_MILLIS = 2 * 60 * 1000;
+    private static final int DEDUP_CAPACITY = 32;
+    private static final DedupCache RECENT_MESSAGES = new DedupCache(DEDUP_CAPACITY, DEDUP_TTL_MILLIS);
+    private static final DedupCache RECENT_CODES = new DedupCache(DEDUP_CAPACITY, DEDUP_TTL_MILLIS);
+    // Bodies regardless of sender: a notification names the sender as the messaging app shows it,
+    // which need not match the SMS address; the broadcast reaches us before the app has posted the SMS
+    private static final DedupCache RECENT_BODIES = new DedupCache(DEDUP_CAPACITY, DEDUP_TTL_MILLIS);
+
+    // Per-service learned OTP position, tried before the full scan
+    private static final SenderTemplateCache SENDER_TEMPLATES = new SenderTemplateCache();
+
+    private MessagePipeline() {
+    }
+
+    /**
+     * Extract the OTP from a message and copy it to the clipboard
+     *
+     * @param context Application context
+     * @param message Message from any source
+     */
+    static void process(final Context context, InboundMessage message) {
+        CharSequence body = message.getBody();
+        String sender = message.getSender();
+
+        TraceBuffer trace = TraceBuffer.getInstance();
+
+        // Most traffic is not OTP; the counted prefilter turns it away before fingerprinting and dedup
+        OtpRuleSettings.ensureLoaded(context);
+        if (!OtpExtractor.prefilter(body)) {
+            trace.record(TraceBuffer.PREFILTER_REJECTED, 0, body.length(), 0, 0);
+            return;
+        }
+        long messageHash = MessageFingerprint.of(body);
+        trace.record(TraceBuffer.MESSAGE_RECEIVED, 0, body.length(), message.getSource().ordinal(), messageHash);
+
+        // Skip messages already handled recently, before extraction; the same text from another route of
+        // one service counts too
+        int serviceId = SenderSettings.getNormalizer(context).getServiceId(sender);
+        long now = SystemClock.elapsedRealtime();
+        boolean seenBody = RECENT_BODIES.checkAndAdd(messageHash, now);
+        if (RECENT_MESSAGES.checkAndAdd(DedupCache.messageKey(serviceId, messageHash), now)
+                || (seenBody && message.getSource() == InboundMessage.Source.NOTIFICATION)) {
+            trace.record(TraceBuffer.DUPLICATE_DROPPED, 0, body.length(), 0, messageHash);
+            return;
+        }
+
+        // Extract OTP from message, including any user-defined rules; the prefilter has already run
+        OtpMatch match = SENDER_TEMPLATES.findAccepted(serviceId, body);
+        String otp = match != null ? match.getCode() : null;
+        if (otp == null || otp.isEmpty()) {
+            trace.record(TraceBuffer.NO_OTP, 0, body.length(), 0, messageHash);
+            return;
+        }
+        trace.record(TraceBuffer.OTP_EXTRACTED, match.getPatternIndex(), body.length(), otp.length(), messageHash);
+
+        // The same code via another channel or a reworded resend is already on the clipboard and in history
+        long codeHash = MessageFingerprint.of(otp);
+        // A late code is not added, so a fresh resend of it is still copied
+        boolean repeated = message.isLate()
+                ? RECENT_CODES.contains(codeHash, now)
+                : RECENT_CODES.checkAndAdd(codeHash, now);
+        if (repeated) {
+            trace.record(TraceBuffer.CODE_REPEATED, 0, 0, otp.length(), codeHash);
+            return;
+        }
+
+        // Record in history; queued for the journal's writer thread
+        OtpRecord record = new OtpRecord(otp, sender, message.getTimestampMillis(), match.getPatternIndex(),
+                messageHash);
+        if (OtpHistoryJournal.getInstance(context).append(record)) {
+            OtpHistoryIndex.getInstance(context).add(record);
+            OtpStatisticsStore.getInstance(context).record(record);
+        }
+        if (message.isLate()) {
+            trace.record(TraceBuffer.LATE_NOT_COPIED, 0, 0, otp.length(), codeHash);
+            return;
+        }
+
+        // Copy OTP to clipboard; bursts are coalesced so only the newest code is written
+        // ClipboardHelper traces the outcome
+        ClipboardWriter.getInstance(context).submit(otp, new ClipboardWriter.Callback() {
+            @Override
+            public void onClipboardWrite(String text, boolean copied) {
+                if (copied) {
+                    // Show toast notification to user
+                    showToast(context, "OTP copied to clipboard: " + text);
+                }
+            }
+        });
+    }
+
+    private static void showToast(final Context context, final String text) {
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(context, text, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+}
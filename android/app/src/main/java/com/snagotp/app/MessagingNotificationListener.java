@@ -0,0 +1,77 @@
+package com.snagotp.app;
+
+import android.app.Notification;
+import android.os.Bundle;
+import android.service.notification.NotificationListenerService;
+import android.service.notification.StatusBarNotification;
+import android.util.Log;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.Person;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Notification source of the {@link IngestionBus}, for messages that never arrive as SMS (RCS chats)
+ * Reads the newest message of notifications posted by known messaging apps; the user grants access
+ * under Settings > Notifications > Device & app notifications
+ * SMS shown by the same apps are also seen here; the pipeline drops them as duplicates of the broadcast
+ */
+public class MessagingNotificationListener extends NotificationListenerService {
+    private static final String TAG = "MessagingNotificationListener";
+
+    private static final Set<String> MESSAGING_PACKAGES = new HashSet<>(Arrays.asList(
+            "com.google.android.apps.messaging",
+            "com.samsung.android.messaging"));
+
+    @Override
+    public void onNotificationPosted(StatusBarNotification notification) {
+        try {
+            if (!MESSAGING_PACKAGES.contains(notification.getPackageName())) {
+                return;
+            }
+            Notification content = notification.getNotification();
+            if ((content.flags & Notification.FLAG_GROUP_SUMMARY) != 0) {
+                // The conversation notifications carry the messages
+                return;
+            }
+            InboundMessage message = read(content, notification.getPostTime());
+            if (message != null) {
+                IngestionBus.post(this, message);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error reading notification: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The newest message of a MessagingStyle notification, or the plain title and text otherwise
+     */
+    private static InboundMessage read(Notification content, long postTime) {
+        Bundle extras = content.extras;
+        CharSequence title = extras.getCharSequence(Notification.EXTRA_TITLE);
+
+        NotificationCompat.MessagingStyle style =
+                NotificationCompat.MessagingStyle.extractMessagingStyleFromNotification(content);
+        if (style != null && !style.getMessages().isEmpty()) {
+            List<NotificationCompat.MessagingStyle.Message> messages = style.getMessages();
+            NotificationCompat.MessagingStyle.Message last = messages.get(messages.size() - 1);
+            if (last.getText() == null) {
+                return null;
+            }
+            Person person = last.getPerson();
+            CharSequence sender = person != null && person.getName() != null ? person.getName()
+                    : style.getConversationTitle() != null ? style.getConversationTitle() : title;
+            return new InboundMessage(InboundMessage.Source.NOTIFICATION, sender != null ? sender.toString() : null,
+                    last.getText(), last.getTimestamp());
+        }
+
+        CharSequence text = extras.getCharSequence(Notification.EXTRA_TEXT);
+        if (text == null) {
+            return null;
+        }
+        return new InboundMessage(InboundMessage.Source.NOTIFICATION, title != null ? title.toString() : null,
+                text, postTime);
+    }
+}
@@ -0,0 +1,121 @@
+package com.snagotp.app;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import com.snagotp.core.ExtractionMetrics;
+import com.snagotp.core.OtpStatistics;
+import com.snagotp.core.TraceBuffer;
+
+/**
+ * Shows the extraction metrics collected since the process started, followed by the persisted OTP statistics
+ * Also exports the {@link TraceBuffer} for bug reports
+ */
+public class MetricsFragment extends Fragment {
+
+    private static final int TOP_SERVICES = 5;
+
+    private TextView metricsText;
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_metrics, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        metricsText = view.findViewById(R.id.metrics_text);
+        Button resetButton = view.findViewById(R.id.metrics_reset_button);
+        Button exportTraceButton = view.findViewById(R.id.metrics_export_trace_button);
+
+        resetButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                ExtractionMetrics.getInstance().reset();
+                refresh();
+            }
+        });
+        exportTraceButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                exportTrace();
+            }
+        });
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        // Fragments are kept alive and shown/hidden by MainActivity, so onResume alone is not enough
+        if (!hidden) {
+            refresh();
+        }
+    }
+
+    private void refresh() {
+        if (metricsText != null) {
+            metricsText.setText(ExtractionMetrics.getInstance().dump() + "\n"
+                    + formatStatistics(OtpStatisticsStore.getInstance(requireContext()).getStatistics()));
+        }
+    }
+
+    /**
+     * Share the trace as plain text; it holds no codes or message text, only lengths and redacted hashes
+     */
+    private void exportTrace() {
+        String trace = TraceBuffer.getInstance().dump();
+        if (trace.isEmpty()) {
+            Toast.makeText(requireContext(), R.string.metrics_trace_empty, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("text/plain");
+        intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.metrics_trace_subject));
+        intent.putExtra(Intent.EXTRA_TEXT, trace);
+        startActivity(Intent.createChooser(intent, getString(R.string.metrics_export_trace)));
+    }
+
+    private static String formatStatistics(OtpStatistics statistics) {
+        StringBuilder builder = new StringBuilder();
+        long today = statistics.dayOf(System.currentTimeMillis());
+        builder.append("OTPs received: ").append(statistics.getTotal()).append('\n');
+        builder.append("  today: ").append(statistics.getDayCount(today))
+                .append(", yesterday: ").append(statistics.getDayCount(today - 1)).append('\n');
+
+        int busiestHour = 0;
+        for (int hour = 1; hour < 24; hour++) {
+            if (statistics.getHourCount(hour) > statistics.getHourCount(busiestHour)) {
+                busiestHour = hour;
+            }
+        }
+        if (statistics.getTotal() > 0) {
+            builder.append("  busiest hour: ").append(busiestHour).append(":00").append('\n');
+        }
+
+        builder.append("Top services:\n");
+        for (String sender : statistics.getTopSenders(TOP_SERVICES)) {
+            builder.append("  ").append(sender).append(": ").append(statistics.getSenderCount(sender)).append('\n');
+        }
+        if (statistics.getOtherSenderCount() > 0) {
+            builder.append("  other: ").append(statistics.getOtherSenderCount()).append('\n');
+        }
+        return builder.toString();
+    }
+}
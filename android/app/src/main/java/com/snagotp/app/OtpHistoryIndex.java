@@ -0,0 +1,166 @@
+package com.snagotp.app;
+
+import android.content.Context;
+import android.util.Log;
+import com.snagotp.core.OtpHistoryRing;
+import com.snagotp.core.SenderSearchIndex;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-memory OTP history with type-ahead search by sender or service
+ * Loaded once from the history journal on a background thread, then kept up to date as
+ * SmsReceiver and the inbox backfill add records. Rows live in an {@link OtpHistoryRing} sized to
+ * the journal's retention; records are journaled before they are added here, so rows the ring
+ * overwrites remain on disk. Search entry ids are ring sequence numbers.
+ */
+public final class OtpHistoryIndex {
+    private static final String TAG = "OtpHistoryIndex";
+
+    // A record added while loading can only be in the loaded snapshot if it was among the
+    // journal's most recent writes, which is bounded by the journal queue
+    private static final int LOAD_OVERLAP = 1024;
+
+    private static volatile OtpHistoryIndex instance;
+
+    private final OtpHistoryRing ring = new OtpHistoryRing(OtpHistoryJournal.DEFAULT_MAX_RECORDS);
+    private final SenderSearchIndex searchIndex = new SenderSearchIndex();
+    // Guarded by this
+    private List<OtpRecord> pendingWhileLoading = new ArrayList<>();
+
+    /**
+     * @param context Any context; the application context is used
+     * @return The shared index; starts loading the journal on first use
+     */
+    public static OtpHistoryIndex getInstance(Context context) {
+        OtpHistoryIndex result = instance;
+        if (result == null) {
+            synchronized (OtpHistoryIndex.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new OtpHistoryIndex();
+                    result.load(OtpHistoryJournal.getInstance(context.getApplicationContext()));
+                }
+            }
+        }
+        return result;
+    }
+
+    private OtpHistoryIndex() {
+    }
+
+    private void load(final OtpHistoryJournal journal) {
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<OtpRecord> loaded;
+                try {
+                    loaded = journal.readRecent(Math.min(journal.size(), ring.getCapacity()));
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not load history: " + e.getMessage());
+                    loaded = Collections.emptyList();
+                }
+                finishLoad(loaded);
+            }
+        }, "SnagOTP-history-index");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private synchronized void finishLoad(List<OtpRecord> newestFirst) {
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            addLocked(newestFirst.get(i));
+        }
+        Set<Long> recentHashes = new HashSet<>();
+        int end = ring.getEndSequence();
+        for (int sequence = Math.max(ring.getFirstSequence(), end - LOAD_OVERLAP); sequence < end; sequence++) {
+            recentHashes.add(ring.getMessageHash(sequence));
+        }
+        for (OtpRecord record : pendingWhileLoading) {
+            if (!recentHashes.contains(record.getMessageHash())) {
+                addLocked(record);
+            }
+        }
+        pendingWhileLoading = null;
+        notifyAll();
+        Log.i(TAG, "History index loaded: " + ring.size() + " records, "
+                + searchIndex.getTermCount() + " terms");
+    }
+
+    /**
+     * Add a record that was just written to the journal
+     *
+     * @param record New record
+     */
+    public synchronized void add(OtpRecord record) {
+        if (pendingWhileLoading != null) {
+            pendingWhileLoading.add(record);
+        } else {
+            addLocked(record);
+        }
+    }
+
+    private void addLocked(OtpRecord record) {
+        int sequence = ring.append(record.getCode(), record.getSender(), record.getTimestampMillis(),
+                record.getPatternIndex(), record.getMessageHash());
+        searchIndex.add(sequence, record.getSender());
+        // Rows the ring has overwritten are no longer searchable
+        searchIndex.removeBefore(ring.getFirstSequence());
+    }
+
+    /**
+     * Records whose sender or service starts with the query
+     *
+     * @param query Text typed so far; empty for the newest records
+     * @param limit Maximum number of results
+     * @return Matching records, newest first
+     */
+    public synchronized List<OtpRecord> search(String query, int limit) {
+        int[] ids = searchIndex.search(query, limit, ring.getFirstSequence());
+        List<OtpRecord> results = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            results.add(new OtpRecord(ring.getCode(id), ring.getSender(id), ring.getTimestampMillis(id),
+                    ring.getPatternIndex(id), ring.getMessageHash(id)));
+        }
+        return results;
+    }
+
+    /**
+     * Column view of the history for screens that walk many rows, e.g. statistics;
+     * read sequences from {@link OtpHistoryRing#getFirstSequence} to {@link OtpHistoryRing#getEndSequence}
+     *
+     * @return The ring backing this index
+     */
+    public OtpHistoryRing getRing() {
+        return ring;
+    }
+
+    /**
+     * @return false while the journal is still being loaded
+     */
+    public synchronized boolean isLoaded() {
+        return pendingWhileLoading == null;
+    }
+
+    /**
+     * Block until the journal has been loaded; call off the main thread
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitLoaded() throws InterruptedException {
+        while (pendingWhileLoading != null) {
+            wait();
+        }
+    }
+
+    /**
+     * @return Number of records in the index
+     */
+    public int size() {
+        return ring.size();
+    }
+}
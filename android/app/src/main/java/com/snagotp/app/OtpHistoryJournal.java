@@ -0,0 +1,555 @@
+package com.snagotp.app;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-disk journal of extracted OTPs, backing the Snags history screen
+ * Appends are queued and written by a background thread that fsyncs once per batch (group commit),
+ * so the receive path never waits for disk
+ * On startup the file is scanned once to rebuild an in-memory offset index and drop any torn tail;
+ * once it grows past its limit the oldest records are compacted away on the same thread
+ *
+ * File layout: int magic, int version, then records of
+ *   int payloadLength, payload, int crc32(payload)
+ * where payload is: long timestamp, long messageHash, byte patternIndex, UTF sender, UTF code
+ * Senders and codes are cut to {@link #MAX_FIELD_LENGTH} chars when written, so no payload can exceed the
+ * limit the startup scan uses to recognise a torn tail
+ */
+public final class OtpHistoryJournal {
+    private static final String TAG = "OtpHistoryJournal";
+    private static final String FILE_NAME = "otp_history.journal";
+
+    /** Records kept after compaction */
+    public static final int DEFAULT_MAX_RECORDS = 50000;
+
+    /** Longest sender or code written; at up to 3 bytes per char both still fit in one payload */
+    public static final int MAX_FIELD_LENGTH = 512;
+
+    private static final int MAGIC = 0x534f544a; // "SOTJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 8;
+    private static final int MAX_PAYLOAD = 4096;
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_BATCH = 256;
+    private static final long GROUP_COMMIT_WINDOW_MS = 10;
+
+    private static volatile OtpHistoryJournal instance;
+
+    private final File file;
+    private final int maxRecords;
+    private final BlockingQueue<OtpRecord> pending = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Set if the file could not be opened; the writer has stopped and appends are refused
+    private volatile boolean failed;
+
+    // Records being or already queued; counted before the offer so a waiter never undercounts
+    private final AtomicLong appendCount = new AtomicLong();
+    // Records the writer has finished with, and that count just after the last batch it failed to write
+    private final Object progress = new Object();
+    private long processedCount;
+    private long lostThrough;
+
+    // Index of committed records, guarded by lock
+    private long[] offsets = new long[256];
+    private int count;
+    private long committedLength;
+
+    // Owned by the writer thread
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private final ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream(128);
+    private final DataOutputStream payloadOut = new DataOutputStream(payloadBuffer);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Get the app-wide journal stored in the app's files directory
+     *
+     * @param context Any context; the application context is used
+     * @return The shared journal
+     */
+    public static OtpHistoryJournal getInstance(Context context) {
+        OtpHistoryJournal result = instance;
+        if (result == null) {
+            synchronized (OtpHistoryJournal.class) {
+                result = instance;
+                if (result == null) {
+                    File dir = context.getApplicationContext().getFilesDir();
+                    instance = result = new OtpHistoryJournal(new File(dir, FILE_NAME), DEFAULT_MAX_RECORDS);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Open a journal and start its writer thread
+     * The index is rebuilt on the writer thread, so this returns immediately
+     *
+     * @param file Journal file; created if missing
+     * @param maxRecords Number of newest records kept when compacting
+     */
+    public OtpHistoryJournal(File file, int maxRecords) {
+        if (maxRecords < 1) {
+            throw new IllegalArgumentException("maxRecords must be positive: " + maxRecords);
+        }
+        this.file = file;
+        this.maxRecords = maxRecords;
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "SnagOTP-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a record for writing
+     * Never blocks; if the queue is full or the journal could not be opened the record is dropped
+     *
+     * @param record Record to append
+     * @return true if queued, false if dropped
+     */
+    public boolean append(OtpRecord record) {
+        if (record == null || failed) {
+            return false;
+        }
+        appendCount.incrementAndGet();
+        if (!pending.offer(record)) {
+            appendCount.decrementAndGet();
+            Log.w(TAG, "History queue full, dropping record");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queue a record for writing, waiting for space if the queue is full
+     * For bulk writers such as the inbox backfill, which must not drop records
+     *
+     * @param record Record to append
+     * @param timeoutMillis Maximum time to wait for space
+     * @return true if queued, false if the wait timed out or the journal could not be opened
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean append(OtpRecord record, long timeoutMillis) throws InterruptedException {
+        if (record == null || failed) {
+            return false;
+        }
+        appendCount.incrementAndGet();
+        boolean queued = false;
+        try {
+            queued = pending.offer(record, timeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            if (!queued) {
+                appendCount.decrementAndGet();
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Take a mark before appending records that {@link #awaitCommitted} will wait for
+     *
+     * @return Current write progress
+     */
+    public long getCommitMark() {
+        synchronized (progress) {
+            return processedCount;
+        }
+    }
+
+    /**
+     * Wait until every record queued so far has been written and synced
+     *
+     * @param mark From {@link #getCommitMark()}, taken before the records of interest were appended
+     * @param timeoutMillis Maximum time to wait
+     * @return true if they were all committed; false on timeout, if the journal could not be opened, or if
+     *         a write has failed since the mark, which may have lost some of them
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCommitted(long mark, long timeoutMillis) throws InterruptedException {
+        long target = appendCount.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progress) {
+            while (processedCount < target && !failed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                progress.wait(remaining);
+            }
+            return !failed && lostThrough <= mark;
+        }
+    }
+
+    /**
+     * @return true if the journal could not be opened; nothing is written and appends return false
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * @return Number of records committed to disk
+     * @throws InterruptedIOException if interrupted while the index is being rebuilt
+     */
+    public int size() throws InterruptedIOException {
+        awaitLoaded();
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read the newest committed records
+     * Reads one contiguous range of the file; call off the main thread
+     *
+     * @param limit Maximum number of records to return
+     * @return Records, newest first
+     * @throws IOException if the journal cannot be read
+     */
+    public List<OtpRecord> readRecent(int limit) throws IOException {
+        awaitLoaded();
+
+        byte[] bytes;
+        int n;
+        lock.readLock().lock();
+        try {
+            n = Math.min(limit, count);
+            if (n <= 0) {
+                return Collections.emptyList();
+            }
+            long start = offsets[count - n];
+            bytes = new byte[(int) (committedLength - start)];
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                input.seek(start);
+                input.readFully(bytes);
+            } finally {
+                input.close();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<OtpRecord> records = new ArrayList<>(n);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < n; i++) {
+            in.readInt(); // payload length
+            long timestamp = in.readLong();
+            long messageHash = in.readLong();
+            int patternIndex = in.readByte();
+            String sender = in.readUTF();
+            String code = in.readUTF();
+            in.readInt(); // crc, verified when the index was built
+            records.add(new OtpRecord(code, sender.isEmpty() ? null : sender, timestamp, patternIndex, messageHash));
+        }
+        Collections.reverse(records);
+        return records;
+    }
+
+    private void awaitLoaded() throws InterruptedIOException {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading history");
+        }
+    }
+
+    private void runWriter() {
+        try {
+            open();
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening history journal: " + e.getMessage(), e);
+            failed = true;
+            pending.clear();
+            synchronized (progress) {
+                progress.notifyAll();
+            }
+            return;
+        } finally {
+            loaded.countDown();
+        }
+
+        List<OtpRecord> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            boolean written = false;
+            try {
+                batch.add(pending.take());
+                // Give a burst a moment to arrive so it shares one fsync
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GROUP_COMMIT_WINDOW_MS);
+                while (batch.size() < MAX_BATCH) {
+                    long remaining = deadline - System.nanoTime();
+                    OtpRecord next = remaining > 0 ? pending.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    pending.drainTo(batch, MAX_BATCH - batch.size());
+                }
+
+                writeBatch(batch);
+                written = true;
+                if (count > maxRecords + maxRecords / 2) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing history journal: " + e.getMessage(), e);
+                recover();
+            } finally {
+                finishBatch(batch.size(), written);
+                batch.clear();
+            }
+        }
+    }
+
+    private void finishBatch(int size, boolean written) {
+        synchronized (progress) {
+            processedCount += size;
+            if (!written) {
+                lostThrough = processedCount;
+            }
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * Rebuild the offset index from the file, truncating anything after the last valid record
+     */
+    private void open() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+
+        long position = HEADER_SIZE;
+        boolean valid = false;
+        if (file.length() >= HEADER_SIZE) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            try {
+                valid = in.readInt() == MAGIC && in.readInt() == VERSION;
+                byte[] payload = new byte[MAX_PAYLOAD];
+                while (valid) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                        if (length <= 0 || length > MAX_PAYLOAD) {
+                            break;
+                        }
+                        in.readFully(payload, 0, length);
+                        crc.reset();
+                        crc.update(payload, 0, length);
+                        if (in.readInt() != (int) crc.getValue()) {
+                            break;
+                        }
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    addOffset(position);
+                    position += RECORD_OVERHEAD + length;
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        if (!valid) {
+            if (file.length() > 0) {
+                Log.w(TAG, "Unrecognised history journal, starting a new one");
+            }
+            count = 0;
+            DataOutputStream header = new DataOutputStream(new FileOutputStream(file, false));
+            try {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.flush();
+            } finally {
+                header.close();
+            }
+            position = HEADER_SIZE;
+        } else if (position < file.length()) {
+            Log.w(TAG, "Dropping " + (file.length() - position) + " bytes of torn history");
+            truncate(position);
+        }
+
+        committedLength = position;
+        openAppendStream();
+        Log.i(TAG, "History journal loaded: " + count + " records");
+    }
+
+    private void writeBatch(List<OtpRecord> batch) throws IOException {
+        long[] batchOffsets = new long[batch.size()];
+        long position = committedLength;
+        for (int i = 0; i < batch.size(); i++) {
+            batchOffsets[i] = position;
+            position += writeRecord(batch.get(i));
+        }
+        out.flush();
+        fileOut.getFD().sync();
+
+        lock.writeLock().lock();
+        try {
+            for (long offset : batchOffsets) {
+                addOffset(offset);
+            }
+            committedLength = position;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int writeRecord(OtpRecord record) throws IOException {
+        payloadBuffer.reset();
+        payloadOut.writeLong(record.getTimestampMillis());
+        payloadOut.writeLong(record.getMessageHash());
+        payloadOut.writeByte(record.getPatternIndex());
+        payloadOut.writeUTF(limit(record.getSender() != null ? record.getSender() : ""));
+        payloadOut.writeUTF(limit(record.getCode()));
+        byte[] payload = payloadBuffer.toByteArray();
+
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+        return RECORD_OVERHEAD + payload.length;
+    }
+
+    private static String limit(String field) {
+        if (field.length() <= MAX_FIELD_LENGTH) {
+            return field;
+        }
+        int end = MAX_FIELD_LENGTH;
+        if (Character.isHighSurrogate(field.charAt(end - 1))) {
+            // Do not split a surrogate pair
+            end--;
+        }
+        return field.substring(0, end);
+    }
+
+    /**
+     * Keep only the newest maxRecords records by copying them into a new file and swapping it in
+     */
+    private void compact() throws IOException {
+        int drop = count - maxRecords;
+        long from = offsets[drop];
+        File tmp = new File(file.getPath() + ".tmp");
+
+        FileOutputStream tmpOut = new FileOutputStream(tmp, false);
+        try {
+            DataOutputStream header = new DataOutputStream(tmpOut);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.flush();
+            FileChannel source = new FileInputStream(file).getChannel();
+            try {
+                long copied = 0;
+                long total = committedLength - from;
+                while (copied < total) {
+                    copied += source.transferTo(from + copied, total - copied, tmpOut.getChannel());
+                }
+            } finally {
+                source.close();
+            }
+            tmpOut.getFD().sync();
+        } finally {
+            tmpOut.close();
+        }
+
+        out.close();
+        lock.writeLock().lock();
+        try {
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+            long shift = from - HEADER_SIZE;
+            System.arraycopy(offsets, drop, offsets, 0, maxRecords);
+            for (int i = 0; i < maxRecords; i++) {
+                offsets[i] -= shift;
+            }
+            count = maxRecords;
+            committedLength -= shift;
+        } finally {
+            lock.writeLock().unlock();
+            openAppendStream();
+        }
+        Log.i(TAG, "History journal compacted, dropped " + drop + " records");
+    }
+
+    /**
+     * After a failed write, cut the file back to the last committed record so the index stays valid
+     */
+    private void recover() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Already failing, the stream is reopened below
+        }
+        try {
+            truncate(committedLength);
+            openAppendStream();
+        } catch (IOException e) {
+            Log.e(TAG, "Error recovering history journal: " + e.getMessage(), e);
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void openAppendStream() throws IOException {
+        fileOut = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, 8 * 1024));
+    }
+
+    private void addOffset(long offset) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = offset;
+    }
+}
@@ -0,0 +1,56 @@
+package com.snagotp.app;
+
+/**
+ * One extracted OTP as kept in history
+ * The message itself is not stored, only a fingerprint of its body
+ */
+public final class OtpRecord {
+    private final String code;
+    private final String sender;
+    private final long timestampMillis;
+    private final int patternIndex;
+    private final long messageHash;
+
+    public OtpRecord(String code, String sender, long timestampMillis, int patternIndex, long messageHash) {
+        this.code = code;
+        this.sender = sender;
+        this.timestampMillis = timestampMillis;
+        this.patternIndex = patternIndex;
+        this.messageHash = messageHash;
+    }
+
+    /**
+     * @return The extracted OTP
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @return Originating address, or null if unknown
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * @return Time the message was received, in milliseconds since the epoch
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return The 1-based pattern number that produced the code
+     */
+    public int getPatternIndex() {
+        return patternIndex;
+    }
+
+    /**
+     * @return Fingerprint of the message body
+     */
+    public long getMessageHash() {
+        return messageHash;
+    }
+}
@@ -0,0 +1,132 @@
+package com.snagotp.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.snagotp.core.OtpExtractor;
+import com.snagotp.core.OtpRule;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Loads user-defined OTP rules from preferences and hands them to OtpExtractor
+ * Rules are stored as a JSON array under {@link #KEY_RULES}, one object per rule:
+ *   {"name": "Bank", "priority": 60, "anchor": "KEYWORD", "keywords": ["código"],
+ *    "charset": "DIGITS", "minLength": 6, "maxLength": 6, "groupSize": 3, "separators": " -"}
+ * The matcher is recompiled only when the stored rules change
+ */
+public final class OtpRuleSettings {
+    private static final String TAG = "OtpRuleSettings";
+
+    public static final String PREFS_NAME = "otp_rules";
+    public static final String KEY_RULES = "rules";
+
+    private static volatile boolean loaded;
+
+    // SharedPreferences only holds listeners weakly, so keep a strong reference here
+    private static final SharedPreferences.OnSharedPreferenceChangeListener LISTENER =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+                    if (KEY_RULES.equals(key)) {
+                        apply(preferences);
+                    }
+                }
+            };
+
+    private OtpRuleSettings() {
+    }
+
+    /**
+     * Load the stored rules once and follow later changes
+     *
+     * @param context Any context; the application context is used
+     */
+    public static void ensureLoaded(Context context) {
+        if (loaded) {
+            return;
+        }
+        synchronized (OtpRuleSettings.class) {
+            if (loaded) {
+                return;
+            }
+            SharedPreferences preferences = context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            preferences.registerOnSharedPreferenceChangeListener(LISTENER);
+            apply(preferences);
+            loaded = true;
+        }
+    }
+
+    /**
+     * Store rules; the listener recompiles the matcher
+     *
+     * @param context Any context
+     * @param rulesJson JSON array of rule objects, or null to remove all user rules
+     */
+    public static void save(Context context, String rulesJson) {
+        context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_RULES, rulesJson)
+                .apply();
+    }
+
+    private static void apply(SharedPreferences preferences) {
+        OtpExtractor.setCustomRules(parse(preferences.getString(KEY_RULES, null)));
+    }
+
+    /**
+     * Parse a JSON rules array; invalid rules are skipped
+     *
+     * @param rulesJson JSON array of rule objects, may be null
+     * @return Parsed rules, empty if none are valid
+     */
+    static List<OtpRule> parse(String rulesJson) {
+        if (rulesJson == null || rulesJson.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<OtpRule> rules = new ArrayList<>();
+        try {
+            JSONArray array = new JSONArray(rulesJson);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject object = array.optJSONObject(i);
+                if (object == null) {
+                    continue;
+                }
+                try {
+                    rules.add(parseRule(object));
+                } catch (JSONException | IllegalArgumentException e) {
+                    Log.w(TAG, "Skipping invalid OTP rule " + i + ": " + e.getMessage());
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Stored OTP rules are not a JSON array: " + e.getMessage());
+        }
+        return rules;
+    }
+
+    private static OtpRule parseRule(JSONObject object) throws JSONException {
+        List<String> keywords = new ArrayList<>();
+        JSONArray keywordArray = object.optJSONArray("keywords");
+        if (keywordArray != null) {
+            for (int i = 0; i < keywordArray.length(); i++) {
+                keywords.add(keywordArray.getString(i));
+            }
+        }
+        return new OtpRule(
+                object.optString("name", "Custom"),
+                object.optInt("priority", 100),
+                OtpRule.Anchor.valueOf(object.getString("anchor").toUpperCase(Locale.ROOT)),
+                keywords,
+                OtpRule.Charset.valueOf(object.optString("charset", "DIGITS").toUpperCase(Locale.ROOT)),
+                object.getInt("minLength"),
+                object.getInt("maxLength"),
+                object.optInt("groupSize", 0),
+                object.optString("separators", null));
+    }
+}
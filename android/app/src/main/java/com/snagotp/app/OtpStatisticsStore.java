@@ -0,0 +1,202 @@
+package com.snagotp.app;
+
+import android.content.Context;
+import android.util.Log;
+import com.snagotp.core.OtpStatistics;
+import com.snagotp.core.SenderNormalizer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * App-wide {@link OtpStatistics}, persisted next to the history journal
+ * Senders are counted under their service name from {@link SenderSettings}, so "VM-HDFCBK" and
+ * "AD-HDFCBK" add up to one entry
+ * Each OTP added to history is counted in memory on the receive path; the counts are written back
+ * to disk a few seconds later by a background thread, batching bursts into one write.
+ * The saved counts are loaded on that same thread before any save, and added to whatever was
+ * recorded meanwhile. Without a saved file (first run after upgrading) they are rebuilt once from the journal.
+ */
+public final class OtpStatisticsStore {
+    private static final String TAG = "OtpStatisticsStore";
+    private static final String FILE_NAME = "otp_stats.bin";
+    private static final long SAVE_DELAY_MILLIS = 2000;
+
+    private static volatile OtpStatisticsStore instance;
+
+    private final File file;
+    private final SenderNormalizer normalizer;
+    private final OtpStatistics statistics = new OtpStatistics(TimeZone.getDefault());
+    private final ScheduledExecutorService executor;
+
+    // Guarded by this
+    private boolean savePending;
+    // Hashes of records counted before the load finished, so a rebuild from the journal skips them
+    private Set<Long> recordedBeforeLoad = new HashSet<>();
+
+    private final Runnable saveTask = new Runnable() {
+        @Override
+        public void run() {
+            save();
+        }
+    };
+
+    /**
+     * @param context Any context; the application context is used
+     * @return The shared store; starts loading saved counts on first use
+     */
+    public static OtpStatisticsStore getInstance(Context context) {
+        OtpStatisticsStore result = instance;
+        if (result == null) {
+            synchronized (OtpStatisticsStore.class) {
+                result = instance;
+                if (result == null) {
+                    Context appContext = context.getApplicationContext();
+                    instance = result = new OtpStatisticsStore(new File(appContext.getFilesDir(), FILE_NAME),
+                            SenderSettings.getNormalizer(appContext));
+                    result.load(OtpHistoryJournal.getInstance(appContext));
+                }
+            }
+        }
+        return result;
+    }
+
+    private OtpStatisticsStore(File file, SenderNormalizer normalizer) {
+        this.file = file;
+        this.normalizer = normalizer;
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setName("SnagOTP-stats");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Count a record that was just added to history
+     *
+     * @param record New record
+     */
+    public void record(OtpRecord record) {
+        statistics.record(normalizer.getServiceName(record.getSender()), record.getTimestampMillis());
+        synchronized (this) {
+            if (recordedBeforeLoad != null) {
+                recordedBeforeLoad.add(record.getMessageHash());
+            }
+            if (!savePending) {
+                savePending = true;
+                executor.schedule(saveTask, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Current counts; queries are lookups and safe from the main thread
+     * Until the saved counts have loaded only OTPs from this process are included
+     *
+     * @return The live statistics
+     */
+    public OtpStatistics getStatistics() {
+        return statistics;
+    }
+
+    private void load(final OtpHistoryJournal journal) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                OtpStatistics saved = readSaved();
+                if (saved == null) {
+                    saved = rebuild(journal);
+                }
+                if (saved != null) {
+                    statistics.merge(saved);
+                }
+                synchronized (OtpStatisticsStore.this) {
+                    recordedBeforeLoad = null;
+                }
+                if (saved != null) {
+                    save();
+                }
+            }
+        });
+    }
+
+    private OtpStatistics readSaved() {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                return OtpStatistics.readFrom(in, TimeZone.getDefault());
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable statistics, rebuilding from history: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private OtpStatistics rebuild(OtpHistoryJournal journal) {
+        try {
+            List<OtpRecord> records = journal.readRecent(journal.size());
+            // Taken after the read: anything journaled by then has also been counted live
+            Set<Long> skip;
+            synchronized (this) {
+                skip = new HashSet<>(recordedBeforeLoad);
+            }
+            OtpStatistics rebuilt = new OtpStatistics(TimeZone.getDefault());
+            for (OtpRecord record : records) {
+                if (!skip.contains(record.getMessageHash())) {
+                    rebuilt.record(normalizer.getServiceName(record.getSender()), record.getTimestampMillis());
+                }
+            }
+            Log.i(TAG, "Statistics rebuilt from " + rebuilt.getTotal() + " history records");
+            return rebuilt;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not rebuild statistics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void save() {
+        synchronized (this) {
+            savePending = false;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            FileOutputStream fileOut = new FileOutputStream(tmp, false);
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+                statistics.writeTo(out);
+                out.flush();
+                fileOut.getFD().sync();
+            } finally {
+                fileOut.close();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving statistics: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.snagotp.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.snagotp.core.SenderNormalizer;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Holds the app-wide {@link SenderNormalizer}: the sender table shipped in assets plus the user's overrides
+ * The table is {@link #TABLE_ASSET}, one "address&lt;TAB&gt;service name" per line; overrides are stored
+ * as a JSON object under {@link #KEY_OVERRIDES}, e.g. {"VM-MYGYM": "My Gym", "+91 98000 12345": "Landlord"}
+ * and are reapplied whenever they change
+ */
+public final class SenderSettings {
+    private static final String TAG = "SenderSettings";
+
+    public static final String TABLE_ASSET = "sender_services.tsv";
+    public static final String PREFS_NAME = "sender_overrides";
+    public static final String KEY_OVERRIDES = "overrides";
+
+    private static volatile SenderNormalizer normalizer;
+
+    // SharedPreferences only holds listeners weakly, so keep a strong reference here
+    private static final SharedPreferences.OnSharedPreferenceChangeListener LISTENER =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+                    if (KEY_OVERRIDES.equals(key)) {
+                        normalizer.setOverrides(parse(preferences.getString(KEY_OVERRIDES, null)));
+                    }
+                }
+            };
+
+    private SenderSettings() {
+    }
+
+    /**
+     * Load the table and overrides once and follow later override changes
+     *
+     * @param context Any context; the application context is used
+     * @return The shared normalizer
+     */
+    public static SenderNormalizer getNormalizer(Context context) {
+        SenderNormalizer result = normalizer;
+        if (result == null) {
+            synchronized (SenderSettings.class) {
+                result = normalizer;
+                if (result == null) {
+                    Context appContext = context.getApplicationContext();
+                    result = new SenderNormalizer(readTable(appContext));
+                    SharedPreferences preferences = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                    result.setOverrides(parse(preferences.getString(KEY_OVERRIDES, null)));
+                    normalizer = result;
+                    preferences.registerOnSharedPreferenceChangeListener(LISTENER);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Store overrides; the listener applies them
+     *
+     * @param context Any context
+     * @param overridesJson JSON object of address to service name, or null to remove all overrides
+     */
+    public static void saveOverrides(Context context, String overridesJson) {
+        context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_OVERRIDES, overridesJson)
+                .apply();
+    }
+
+    private static Map<String, String> readTable(Context context) {
+        try {
+            Reader reader = new InputStreamReader(context.getAssets().open(TABLE_ASSET), Charset.forName("UTF-8"));
+            try {
+                return SenderNormalizer.parseTable(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read sender table: " + e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Parse a JSON overrides object; non-string values are skipped
+     *
+     * @param overridesJson JSON object, may be null
+     * @return Service names keyed by address, empty if none are valid
+     */
+    static Map<String, String> parse(String overridesJson) {
+        if (overridesJson == null || overridesJson.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> overrides = new HashMap<>();
+        try {
+            JSONObject object = new JSONObject(overridesJson);
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                // optString would turn numbers and booleans into names
+                Object name = object.opt(key);
+                if (name instanceof String) {
+                    overrides.put(key, (String) name);
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Stored sender overrides are not a JSON object: " + e.getMessage());
+        }
+        return overrides;
+    }
+}
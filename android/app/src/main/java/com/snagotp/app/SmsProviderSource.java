@@ -0,0 +1,75 @@
+package com.snagotp.app;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.Telephony;
+import com.snagotp.core.InboxBackfill;
+import com.snagotp.core.MessageRecord;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads SMS from a content provider in pages of ascending _id for the inbox backfill
+ * Works against any provider exposing the Telephony.Sms columns, so tests can point it at a fake one
+ */
+public final class SmsProviderSource implements InboxBackfill.Source {
+    private static final String[] PROJECTION = {
+        Telephony.Sms._ID, Telephony.Sms.ADDRESS, Telephony.Sms.BODY, Telephony.Sms.DATE
+    };
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+
+    /**
+     * Read the device SMS inbox
+     */
+    public SmsProviderSource(ContentResolver resolver) {
+        this(resolver, Telephony.Sms.Inbox.CONTENT_URI);
+    }
+
+    /**
+     * @param resolver Resolver used for queries
+     * @param uri Provider URI with the Telephony.Sms columns
+     */
+    public SmsProviderSource(ContentResolver resolver, Uri uri) {
+        this.resolver = resolver;
+        this.uri = uri;
+    }
+
+    @Override
+    public List<MessageRecord> readPage(long afterId, int limit) throws IOException {
+        Cursor cursor;
+        try {
+            // The SMS provider accepts a LIMIT clause in the sort order
+            cursor = resolver.query(uri, PROJECTION, Telephony.Sms._ID + " > ?",
+                    new String[]{String.valueOf(afterId)}, Telephony.Sms._ID + " ASC LIMIT " + limit);
+        } catch (SecurityException e) {
+            throw new IOException("READ_SMS permission not granted", e);
+        }
+        if (cursor == null) {
+            throw new IOException("SMS provider unavailable: " + uri);
+        }
+
+        try {
+            if (cursor.getCount() == 0) {
+                return Collections.emptyList();
+            }
+            int idColumn = cursor.getColumnIndexOrThrow(Telephony.Sms._ID);
+            int addressColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.ADDRESS);
+            int bodyColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.BODY);
+            int dateColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.DATE);
+
+            List<MessageRecord> page = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext() && page.size() < limit) {
+                page.add(new MessageRecord(cursor.getLong(idColumn), cursor.getString(addressColumn),
+                        cursor.getString(bodyColumn), cursor.getLong(dateColumn)));
+            }
+            return page;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -4,19 +4,33 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.telephony.SmsMessage;
 import android.util.Log;
-import android.widget.Toast;
+import com.snagotp.core.CompositeCharSequence;
+import com.snagotp.core.ConcatenatedSmsHeader;
+import com.snagotp.core.MultipartReassembler;
+import com.snagotp.core.TraceBuffer;
 
 /**
- * BroadcastReceiver to listen for incoming SMS/RCS messages
- * Extracts OTP from message body and copies to clipboard
+ * BroadcastReceiver for incoming SMS, the SMS source of the {@link IngestionBus}
+ * Declared in the manifest, so SMS are captured whether or not the app is open
+ * PDUs are decoded on the bus worker via goAsync() and the message joins the shared {@link MessagePipeline}
+ * Parts of a multipart SMS that arrive in separate broadcasts are buffered, and released as soon as the
+ * parts so far settle the OTP; a message whose other parts never come is drained by a timer when it expires
+ * and only recorded in history, never copied
  * Contributors: Add additional OTP patterns or custom logic as needed
  */
 public class SmsReceiver extends BroadcastReceiver {
     private static final String TAG = "SmsReceiver";
     private static final String SMS_RECEIVED_ACTION = "android.provider.Telephony.SMS_RECEIVED";
 
+    // Only touched on the bus worker
+    private static final MultipartReassembler REASSEMBLER = new MultipartReassembler();
+    private static final long NO_DRAIN = Long.MAX_VALUE;
+    // When the scheduled expiry drain is due, or NO_DRAIN; only touched on the bus worker
+    private static long drainDueMillis = NO_DRAIN;
+
     @Override
     public void onReceive(Context context, Intent intent) {
         try {
@@ -33,47 +47,149 @@ public class SmsReceiver extends BroadcastReceiver {
                 return;
             }
 
-            Object[] pdus = (Object[]) bundle.get("pdus");
+            final Object[] pdus = (Object[]) bundle.get("pdus");
             if (pdus == null || pdus.length == 0) {
                 Log.e(TAG, "No PDUs found in bundle");
                 return;
             }
 
-            // Parse SMS messages
-            StringBuilder messageBody = new StringBuilder();
-            for (Object pdu : pdus) {
-                SmsMessage smsMessage = SmsMessage.createFromPdu((byte[]) pdu);
-                if (smsMessage != null) {
-                    messageBody.append(smsMessage.getMessageBody());
+            // Keep the broadcast alive while the worker handles the message
+            final PendingResult pendingResult = goAsync();
+            final Context appContext = context.getApplicationContext();
+            IngestionBus.post(context, new IngestionBus.Event() {
+                @Override
+                public InboundMessage read() {
+                    return decode(appContext, pdus);
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    pendingResult.finish();
+                }
+            });
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing SMS: " + e.getMessage(), e);
+            // Don't crash the app, just log the error
+        }
+    }
+
+    /**
+     * Parse the PDUs into one message; the part bodies are scanned in place rather than concatenated
+     * Runs on the bus worker
+     *
+     * @return The message, or null if it is an incomplete multipart message still waiting for parts
+     */
+    private static InboundMessage decode(Context context, Object[] pdus) {
+        long now = SystemClock.elapsedRealtime();
+        // Normally done by the timer; catches up if its drain was dropped from a full queue
+        processExpired(context, now);
+
+        String[] parts = new String[pdus.length];
+        ConcatenatedSmsHeader[] headers = new ConcatenatedSmsHeader[pdus.length];
+        String sender = null;
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < pdus.length; i++) {
+            SmsMessage smsMessage = SmsMessage.createFromPdu((byte[]) pdus[i]);
+            if (smsMessage != null) {
+                parts[i] = smsMessage.getMessageBody();
+                headers[i] = ConcatenatedSmsHeader.parse((byte[]) pdus[i]);
+                if (sender == null) {
+                    sender = smsMessage.getOriginatingAddress();
+                    timestamp = smsMessage.getTimestampMillis();
+                }
+            }
+        }
+        if (isWholeMessage(headers)) {
+            return new InboundMessage(InboundMessage.Source.SMS, sender, CompositeCharSequence.of(parts), timestamp);
+        }
+
+        // Parts delivered on their own; any message they settle is processed in turn
+        InboundMessage result = null;
+        for (int i = 0; i < pdus.length; i++) {
+            if (headers[i] == null) {
+                continue;
+            }
+            MultipartReassembler.Message released = REASSEMBLER.add(sender, headers[i], parts[i], timestamp, now);
+            int partLength = parts[i] != null ? parts[i].length() : 0;
+            TraceBuffer.getInstance().record(TraceBuffer.PART_RECEIVED, 0, partLength, headers[i].getPartNumber(), 0);
+            if (released != null) {
+                if (result != null) {
+                    MessagePipeline.process(context, result);
                 }
+                result = toInboundMessage(released, false);
             }
+        }
+        scheduleDrain(context, now);
+        return result;
+    }
 
-            String fullMessage = messageBody.toString();
-            Log.d(TAG, "SMS received: " + fullMessage);
+    /**
+     * Process the buffered messages whose remaining parts never came, with the parts that did
+     * They are late by now, so their codes go to history only
+     * Runs on the bus worker
+     */
+    private static void processExpired(Context context, long now) {
+        for (MultipartReassembler.Message expired : REASSEMBLER.drainExpired(now)) {
+            MessagePipeline.process(context, toInboundMessage(expired, true));
+        }
+    }
 
-            // Extract OTP from message
-            String otp = OtpExtractor.extractOtp(fullMessage);
-            
-            if (otp != null && !otp.isEmpty()) {
-                Log.i(TAG, "OTP detected: " + otp);
-                
-                // Copy OTP to clipboard
-                boolean copied = ClipboardHelper.copyToClipboard(context, otp);
-                
-                if (copied) {
-                    // Show toast notification to user
-                    Toast.makeText(context, "OTP copied to clipboard: " + otp, Toast.LENGTH_SHORT).show();
-                    Log.i(TAG, "OTP successfully copied to clipboard");
-                } else {
-                    Log.e(TAG, "Failed to copy OTP to clipboard");
+    /**
+     * Arrange for the next expiry to be drained on the bus worker when it is due, unless a drain is already
+     * scheduled for then; entries expire in arrival order, so one pending drain at a time is enough
+     * Runs on the bus worker
+     */
+    private static void scheduleDrain(final Context context, long now) {
+        final long due = REASSEMBLER.nextExpiryMillis();
+        if (due == NO_DRAIN || (drainDueMillis <= due && drainDueMillis > now)) {
+            return;
+        }
+        drainDueMillis = due;
+        IngestionBus.executeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (drainDueMillis == due) {
+                    drainDueMillis = NO_DRAIN;
+                }
+                long time = SystemClock.elapsedRealtime();
+                try {
+                    processExpired(context, time);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error processing expired message: " + e.getMessage(), e);
+                } finally {
+                    scheduleDrain(context, time);
                 }
-            } else {
-                Log.d(TAG, "No OTP found in message");
             }
+        }, Math.max(0, due - now));
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing SMS: " + e.getMessage(), e);
-            // Don't crash the app, just log the error
+    /**
+     * The usual case: a single-part SMS, or every part of a multipart one already gathered by the platform
+     */
+    private static boolean isWholeMessage(ConcatenatedSmsHeader[] headers) {
+        ConcatenatedSmsHeader first = headers[0];
+        if (first == null) {
+            for (ConcatenatedSmsHeader header : headers) {
+                if (header != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (first.getPartCount() != headers.length) {
+            return false;
         }
+        for (ConcatenatedSmsHeader header : headers) {
+            if (header == null || header.getReference() != first.getReference()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static InboundMessage toInboundMessage(MultipartReassembler.Message message, boolean late) {
+        return new InboundMessage(InboundMessage.Source.SMS, message.getSender(), message.getText(),
+                message.getTimestampMillis(), late);
     }
 }
@@ -0,0 +1,37 @@
+package com.snagotp.app;
+
+import android.app.Application;
+import android.content.res.AssetManager;
+import com.snagotp.core.PrecompiledMatchers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Process entry point, created before any receiver, service or activity
+ * Points the extractor at the matcher image generated by the build, so the first message of a cold process
+ * reads the built-in tables instead of compiling them; the asset is only opened on that first message
+ */
+public class SnagOtpApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        final AssetManager assets = getAssets();
+        PrecompiledMatchers.setSource(new PrecompiledMatchers.Source() {
+            @Override
+            public ByteBuffer open() throws IOException {
+                // A few KB; reading it is cheaper than mapping it
+                try (InputStream in = assets.open(PrecompiledMatchers.ASSET_NAME)) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, n);
+                    }
+                    return ByteBuffer.wrap(out.toByteArray());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,116 @@
+package com.snagotp.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Coalesced writes and the auto-clear, which only ever clears a clip that still holds our OTP
+ * Robolectric lets the app read the clipboard, as in the foreground; see ClipboardWriter for the background
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ClipboardWriterTest {
+    private static final long AUTO_CLEAR_MILLIS = 1000;
+    // Long enough for the coalescing window plus the auto-clear to have run
+    private static final long SETTLE_MILLIS = ClipboardWriter.COALESCE_WINDOW_MILLIS + AUTO_CLEAR_MILLIS + 500;
+
+    private ClipboardManager clipboard;
+    private ClipboardWriter writer;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
+        writer = new ClipboardWriter(context, AUTO_CLEAR_MILLIS);
+    }
+
+    @Test
+    public void untouchedOtpIsCleared() throws InterruptedException {
+        write("482913");
+        assertEquals("482913", clipText());
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals("", clipText());
+    }
+
+    @Test
+    public void clipCopiedByTheUserIsKept() throws InterruptedException {
+        write("111111");
+        clipboard.setPrimaryClip(ClipData.newPlainText("note", "user text"));
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals("user text", clipText());
+    }
+
+    @Test
+    public void otherClipWithOurLabelIsKept() throws InterruptedException {
+        write("222222");
+        // Another app's OTP, labelled like ours
+        clipboard.setPrimaryClip(ClipData.newPlainText(ClipboardHelper.CLIP_LABEL, "999999"));
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals("999999", clipText());
+    }
+
+    @Test
+    public void newerOtpPushesTheClearBack() throws InterruptedException {
+        write("444444");
+        Thread.sleep(AUTO_CLEAR_MILLIS / 2);
+        write("555555");
+        Thread.sleep(AUTO_CLEAR_MILLIS / 2);
+        // The first OTP's deadline has passed, but the timer now belongs to the second
+        assertEquals("555555", clipText());
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals("", clipText());
+    }
+
+    @Test
+    public void burstIsCoalescedIntoTheNewestOtp() throws InterruptedException {
+        final List<String> written = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        ClipboardWriter.Callback callback = new ClipboardWriter.Callback() {
+            @Override
+            public void onClipboardWrite(String text, boolean copied) {
+                synchronized (written) {
+                    written.add(text);
+                }
+                done.countDown();
+            }
+        };
+        writer.submit("100001", callback);
+        writer.submit("100002", callback);
+        writer.submit("100003", callback);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("100003", clipText());
+        Thread.sleep(ClipboardWriter.COALESCE_WINDOW_MILLIS * 2);
+        synchronized (written) {
+            assertEquals(1, written.size());
+            assertEquals("100003", written.get(0));
+        }
+    }
+
+    private void write(String otp) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        writer.submit(otp, new ClipboardWriter.Callback() {
+            @Override
+            public void onClipboardWrite(String text, boolean copied) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private String clipText() {
+        ClipData clip = clipboard.getPrimaryClip();
+        return clip != null && clip.getItemCount() > 0 ? String.valueOf(clip.getItemAt(0).getText()) : null;
+    }
+}
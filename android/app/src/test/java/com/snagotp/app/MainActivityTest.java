@@ -0,0 +1,88 @@
+package com.snagotp.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.Manifest;
+import android.os.Looper;
+import android.view.View;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import com.google.android.material.navigation.NavigationView;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowActivity;
+
+/**
+ * Startup and navigation of the main screen: drawer screens are created once and then shown or hidden,
+ * and startup work waits until the first frame has been drawn
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MainActivityTest {
+    @Test
+    public void drawerFragmentsAreReusedAcrossSelections() {
+        MainActivity activity = Robolectric.buildActivity(MainActivity.class).setup().get();
+        FragmentManager fragments = activity.getSupportFragmentManager();
+        Fragment home = fragments.findFragmentByTag(MainActivity.fragmentTag(R.id.nav_home));
+        assertNotNull(home);
+
+        select(activity, R.id.nav_metrics);
+        Fragment metrics = fragments.findFragmentByTag(MainActivity.fragmentTag(R.id.nav_metrics));
+        assertNotNull(metrics);
+        assertTrue(home.isHidden());
+
+        select(activity, R.id.nav_help);
+        Fragment help = fragments.findFragmentByTag(MainActivity.fragmentTag(R.id.nav_help));
+        assertNotNull(help);
+        assertTrue(metrics.isHidden());
+        View metricsView = metrics.getView();
+
+        select(activity, R.id.nav_metrics);
+        select(activity, R.id.nav_home);
+        select(activity, R.id.nav_metrics);
+        // Same instances and views, only shown and hidden
+        assertSame(metrics, fragments.findFragmentByTag(MainActivity.fragmentTag(R.id.nav_metrics)));
+        assertSame(home, fragments.findFragmentByTag(MainActivity.fragmentTag(R.id.nav_home)));
+        assertSame(help, fragments.findFragmentByTag(MainActivity.fragmentTag(R.id.nav_help)));
+        assertSame(metricsView, metrics.getView());
+        assertFalse(metrics.isHidden());
+        assertTrue(home.isHidden());
+        assertTrue(help.isHidden());
+        assertEquals(3, fragments.getFragments().size());
+    }
+
+    @Test
+    public void deferredWorkRunsAfterFirstDraw() {
+        ActivityController<MainActivity> controller = Robolectric.buildActivity(MainActivity.class).create();
+        MainActivity activity = controller.get();
+        ShadowActivity shadowActivity = shadowOf(activity);
+        shadowOf(Looper.getMainLooper()).idle();
+        // Nothing can have been drawn before the window is shown
+        assertNull(shadowActivity.getLastRequestedPermission());
+
+        controller.start().resume().visible();
+        View content = activity.findViewById(android.R.id.content);
+        content.getViewTreeObserver().dispatchOnDraw();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        // The permission request is the last step of the deferred work
+        ShadowActivity.PermissionsRequest request = shadowActivity.getLastRequestedPermission();
+        assertNotNull(request);
+        assertEquals(Manifest.permission.RECEIVE_SMS, request.requestedPermissions[0]);
+    }
+
+    private static void select(MainActivity activity, int itemId) {
+        NavigationView navigation = activity.findViewById(R.id.nav_view);
+        activity.onNavigationItemSelected(navigation.getMenu().findItem(itemId));
+        activity.getSupportFragmentManager().executePendingTransactions();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
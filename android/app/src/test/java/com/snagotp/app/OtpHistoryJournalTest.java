@@ -0,0 +1,103 @@
+package com.snagotp.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Records written by one journal must all be read back by the next one, whatever their field lengths
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OtpHistoryJournalTest {
+    private static final long COMMIT_TIMEOUT_MILLIS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void oversizedFieldsAreCutAndLaterRecordsSurvive() throws Exception {
+        File file = new File(folder.getRoot(), "history.journal");
+        OtpHistoryJournal journal = new OtpHistoryJournal(file, 100);
+        // 3 bytes per char in modified UTF-8, far past one payload if written whole
+        String longTitle = repeat('中', 5000);
+        // Cut point falls between the halves of a surrogate pair
+        String emojiTitle = "x" + repeat("😀", 1000);
+        assertTrue(journal.append(record("482913", longTitle, 1)));
+        assertTrue(journal.append(record("123456", emojiTitle, 2)));
+        assertTrue(journal.append(record("654321", "AX-HDFCBK", 3)));
+        awaitCommitted(journal, 3);
+
+        OtpHistoryJournal reopened = new OtpHistoryJournal(file, 100);
+        assertEquals(3, reopened.size());
+        List<OtpRecord> records = reopened.readRecent(3);
+        assertEquals("654321", records.get(0).getCode());
+        assertEquals("AX-HDFCBK", records.get(0).getSender());
+        String cut = records.get(1).getSender();
+        assertEquals(OtpHistoryJournal.MAX_FIELD_LENGTH - 1, cut.length());
+        assertTrue(Character.isLowSurrogate(cut.charAt(cut.length() - 1)));
+        assertEquals(longTitle.substring(0, OtpHistoryJournal.MAX_FIELD_LENGTH), records.get(2).getSender());
+        assertEquals("482913", records.get(2).getCode());
+    }
+
+    @Test
+    public void awaitCommittedWaitsForRecordsToReachDisk() throws Exception {
+        File file = new File(folder.getRoot(), "history.journal");
+        OtpHistoryJournal journal = new OtpHistoryJournal(file, 1000);
+        long mark = journal.getCommitMark();
+        for (int i = 0; i < 300; i++) {
+            assertTrue(journal.append(record(String.valueOf(100000 + i), "AX-HDFCBK", i), COMMIT_TIMEOUT_MILLIS));
+        }
+
+        assertTrue(journal.awaitCommitted(mark, COMMIT_TIMEOUT_MILLIS));
+        assertEquals(300, journal.size());
+        assertEquals(300, new OtpHistoryJournal(file, 1000).size());
+    }
+
+    @Test
+    public void appendFailsWhenTheJournalCannotBeOpened() throws Exception {
+        // A regular file where the journal's directory should be
+        File notADirectory = folder.newFile("blocker");
+        OtpHistoryJournal journal = new OtpHistoryJournal(new File(notADirectory, "history.journal"), 100);
+        assertEquals(0, journal.size());
+
+        assertTrue(journal.isFailed());
+        assertFalse(journal.append(record("482913", "AX-HDFCBK", 1)));
+        assertFalse(journal.append(record("482913", "AX-HDFCBK", 1), 10));
+        assertFalse(journal.awaitCommitted(journal.getCommitMark(), 10));
+    }
+
+    private static OtpRecord record(String code, String sender, long timestampMillis) {
+        return new OtpRecord(code, sender, timestampMillis, 1, timestampMillis);
+    }
+
+    private static void awaitCommitted(OtpHistoryJournal journal, int count) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + COMMIT_TIMEOUT_MILLIS;
+        while (journal.size() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Only " + journal.size() + " of " + count + " records committed");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static String repeat(char c, int times) {
+        return repeat(String.valueOf(c), times);
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder(text.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,200 @@
+package com.snagotp.app;
+
+import com.snagotp.core.OtpScanner;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates reproducible synthetic SMS corpora for the replay harness
+ * Each OTP message comes from a template with a known pattern, so the expected code and pattern
+ * number are known up front; noise messages must produce no OTP
+ * Corpora mix English and non-English text, short and multipart bodies, and repeat senders so the
+ * per-sender template cache is exercised; every generated code is unique within a corpus
+ */
+final class SmsCorpusGenerator {
+
+    /** One generated message and what the extractor should return for it */
+    static final class SyntheticSms {
+        final String sender;
+        final String body;
+        final long timestampMillis;
+        final String expectedCode;
+        final int expectedPattern;
+
+        SyntheticSms(String sender, String body, long timestampMillis, String expectedCode, int expectedPattern) {
+            this.sender = sender;
+            this.body = body;
+            this.timestampMillis = timestampMillis;
+            this.expectedCode = expectedCode;
+            this.expectedPattern = expectedPattern;
+        }
+
+        boolean isNoise() {
+            return expectedCode == null;
+        }
+    }
+
+    private static final int CODE_DIGITS = 0;
+    private static final int CODE_ALPHANUMERIC = 1;
+    private static final int CODE_SPLIT = 2;
+    private static final int CODE_LEADING = 3;
+
+    private static final class Template {
+        final int pattern;
+        final int codeKind;
+        final String format;
+
+        Template(int pattern, int codeKind, String format) {
+            this.pattern = pattern;
+            this.codeKind = codeKind;
+            this.format = format;
+        }
+    }
+
+    // {c} is the code, {s} the service name
+    private static final Template[] OTP_TEMPLATES = {
+        new Template(OtpScanner.PATTERN_KEYWORD_NUMERIC, CODE_DIGITS,
+                "Your OTP for login is {c}. Do not share it with anyone."),
+        new Template(OtpScanner.PATTERN_KEYWORD_NUMERIC, CODE_DIGITS,
+                "{s}: use verification code {c} to confirm your account."),
+        new Template(OtpScanner.PATTERN_KEYWORD_NUMERIC, CODE_DIGITS,
+                "Su código de verificación de {s} es {c}. No lo compartas."),
+        new Template(OtpScanner.PATTERN_KEYWORD_NUMERIC, CODE_DIGITS,
+                "您的{s}验证码是{c}，五分钟内有效，请勿泄露。"),
+        new Template(OtpScanner.PATTERN_KEYWORD_NUMERIC, CODE_DIGITS,
+                "आपका {s} कोड {c} है। इसे किसी के साथ साझा न करें।"),
+        new Template(OtpScanner.PATTERN_KEYWORD_NUMERIC, CODE_DIGITS,
+                "Ваш код подтверждения {s}: {c}. Никому его не сообщайте."),
+        new Template(OtpScanner.PATTERN_STANDALONE_NUMERIC, CODE_DIGITS,
+                "{c} is your {s} sign-in number. It expires in ten minutes."),
+        new Template(OtpScanner.PATTERN_STANDALONE_NUMERIC, CODE_DIGITS,
+                "Dear customer, {c} is the OTP for your purchase at {s}. It is valid for ten minutes. "
+                        + "Never share it: our staff will never ask for it. Report fraud to {s} at once."),
+        new Template(OtpScanner.PATTERN_KEYWORD_ALPHANUMERIC, CODE_ALPHANUMERIC,
+                "Your {s} login code: {c}"),
+        new Template(OtpScanner.PATTERN_KEYWORD_ALPHANUMERIC, CODE_ALPHANUMERIC,
+                "{s} 验证码：{c}，请勿泄露给他人。"),
+        new Template(OtpScanner.PATTERN_KEYWORD_ALPHANUMERIC, CODE_ALPHANUMERIC,
+                "{s} のコード {c} を入力してください。"),
+        new Template(OtpScanner.PATTERN_SPLIT_NUMERIC, CODE_SPLIT,
+                "Your {s} code is {c}"),
+        new Template(OtpScanner.PATTERN_SPLIT_NUMERIC, CODE_SPLIT,
+                "Tu clave de {s} es {c}. Caduca en diez minutos."),
+        new Template(OtpScanner.PATTERN_LEADING_NUMERIC, CODE_LEADING,
+                "{c}is your {s} sign-in number"),
+    };
+
+    private static final String[] NOISE_TEMPLATES = {
+        "Hey, are we still meeting for lunch tomorrow?",
+        "Your parcel from {s} has been delivered to the front desk.",
+        "Flash sale! Up to 50% off today only at {s}.",
+        "Llegaré tarde hoy, nos vemos a las ocho.",
+        "明天见！别忘了带伞。",
+        "Увидимся завтра вечером.",
+        "Your {s} balance is low. Top up now 😀",
+        "Reminder: your appointment with {s} is on Friday at 3 pm. Reply Y to confirm or N to cancel. "
+                + "Please arrive ten minutes early and bring your card with you.",
+    };
+
+    private static final String[] SERVICES = { "Acme", "Globex", "Initech", "Umbrella", "Hooli", "Stark" };
+    private static final String[] SERVICE_SENDERS = { "AX-ACMEID", "VM-GLOBEX", "INITECH", "JD-UMBRLA", "HOOLI", "STARK" };
+    private static final String[] PERSON_SENDERS = { "+15550100201", "+447700900123", "+919800012345" };
+
+    private static final char[] ALPHANUMERIC = "ABCDEFGHJKLMNPQRSTUVWXYZ23456789".toCharArray();
+
+    private final Random random;
+    private final Set<String> usedCodes = new HashSet<>();
+
+    SmsCorpusGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param count Number of messages
+     * @param noisePercent Share of messages that contain no OTP, 0-100
+     * @param startMillis Timestamp of the first message; later ones are a second apart
+     * @return The corpus, in replay order
+     */
+    List<SyntheticSms> generate(int count, int noisePercent, long startMillis) {
+        List<SyntheticSms> corpus = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long timestamp = startMillis + i * 1000L;
+            int service = random.nextInt(SERVICES.length);
+            if (random.nextInt(100) < noisePercent) {
+                String body = NOISE_TEMPLATES[random.nextInt(NOISE_TEMPLATES.length)]
+                        .replace("{s}", SERVICES[service]);
+                String sender = random.nextBoolean()
+                        ? PERSON_SENDERS[random.nextInt(PERSON_SENDERS.length)] : SERVICE_SENDERS[service];
+                corpus.add(new SyntheticSms(sender, body, timestamp, null, 0));
+            } else {
+                Template template = OTP_TEMPLATES[random.nextInt(OTP_TEMPLATES.length)];
+                String shown = newCode(template.codeKind);
+                String expected = template.codeKind == CODE_SPLIT ? shown.replaceAll("[ -]", "") : shown;
+                String body = template.format.replace("{s}", SERVICES[service]).replace("{c}", shown);
+                corpus.add(new SyntheticSms(SERVICE_SENDERS[service], body, timestamp, expected, template.pattern));
+            }
+        }
+        return corpus;
+    }
+
+    private String newCode(int kind) {
+        while (true) {
+            String code;
+            switch (kind) {
+                case CODE_ALPHANUMERIC:
+                    code = alphanumericCode(4 + random.nextInt(5));
+                    break;
+                case CODE_SPLIT:
+                    code = digits(3) + (random.nextBoolean() ? " " : "-") + digits(3);
+                    break;
+                case CODE_LEADING:
+                    code = digits(6);
+                    break;
+                default:
+                    code = digits(4 + random.nextInt(5));
+                    break;
+            }
+            if (usedCodes.add(code.replaceAll("[ -]", ""))) {
+                return code;
+            }
+        }
+    }
+
+    private String digits(int length) {
+        char[] chars = new char[length];
+        for (int k = 0; k < length; k++) {
+            chars[k] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(chars);
+    }
+
+    // At least one letter and one digit, and never four digits in a row (that would be a numeric code)
+    private String alphanumericCode(int length) {
+        while (true) {
+            char[] chars = new char[length];
+            boolean letter = false;
+            boolean digit = false;
+            int digitRun = 0;
+            boolean valid = true;
+            for (int k = 0; k < length; k++) {
+                char c = ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)];
+                chars[k] = c;
+                if (c >= '0' && c <= '9') {
+                    digit = true;
+                    if (++digitRun >= 4) {
+                        valid = false;
+                    }
+                } else {
+                    letter = true;
+                    digitRun = 0;
+                }
+            }
+            if (valid && letter && digit) {
+                return new String(chars);
+            }
+        }
+    }
+}
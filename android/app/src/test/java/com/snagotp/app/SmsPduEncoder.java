@@ -0,0 +1,137 @@
+package com.snagotp.app;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Encodes message bodies as 3GPP SMS-DELIVER PDUs, the format carried in SMS_RECEIVED "pdus"
+ * Bodies are always UCS-2; longer ones are split into concatenated parts with an 8-bit reference
+ * header, the way a network delivers a multipart message
+ * Senders are numeric ("+15550100") or GSM alphanumeric IDs of letters, digits and '-'
+ */
+final class SmsPduEncoder {
+    private static final int UCS2_SINGLE_PART_CHARS = 70;
+    private static final int UCS2_MULTIPART_CHARS = 67;
+
+    private static int nextReference;
+
+    private SmsPduEncoder() {
+        // Utility class
+    }
+
+    /**
+     * @param sender Originating address
+     * @param body Message text
+     * @param timestampMillis Service centre timestamp
+     * @return One PDU per part, in order
+     */
+    static byte[][] encode(String sender, String body, long timestampMillis) {
+        if (body.length() <= UCS2_SINGLE_PART_CHARS) {
+            return new byte[][] { encodePart(sender, body, timestampMillis, -1, 1, 1) };
+        }
+
+        int partCount = 0;
+        for (int offset = 0; offset < body.length(); offset = partEnd(body, offset)) {
+            partCount++;
+        }
+        int reference = nextReference++ & 0xff;
+        byte[][] parts = new byte[partCount][];
+        int offset = 0;
+        for (int k = 0; k < partCount; k++) {
+            int end = partEnd(body, offset);
+            parts[k] = encodePart(sender, body.substring(offset, end), timestampMillis, reference, partCount, k + 1);
+            offset = end;
+        }
+        return parts;
+    }
+
+    // Never splits a surrogate pair across parts
+    private static int partEnd(String body, int offset) {
+        int end = Math.min(body.length(), offset + UCS2_MULTIPART_CHARS);
+        if (end < body.length() && Character.isHighSurrogate(body.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static byte[] encodePart(String sender, String text, long timestampMillis,
+                                     int reference, int partCount, int sequence) {
+        boolean multipart = reference >= 0;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x00);                         // no SMSC address
+        out.write(multipart ? 0x44 : 0x04);      // SMS-DELIVER, no more messages, UDHI when multipart
+        writeAddress(out, sender);
+        out.write(0x00);                         // protocol identifier
+        out.write(0x08);                         // data coding scheme: UCS-2
+        writeTimestamp(out, timestampMillis);
+
+        byte[] userData = text.getBytes(StandardCharsets.UTF_16BE);
+        if (multipart) {
+            out.write(6 + userData.length);
+            out.write(0x05);                     // header length
+            out.write(0x00);                     // concatenated message, 8-bit reference
+            out.write(0x03);
+            out.write(reference);
+            out.write(partCount);
+            out.write(sequence);
+        } else {
+            out.write(userData.length);
+        }
+        out.write(userData, 0, userData.length);
+        return out.toByteArray();
+    }
+
+    private static void writeAddress(ByteArrayOutputStream out, String address) {
+        String digits = address.startsWith("+") ? address.substring(1) : address;
+        if (digits.matches("[0-9]+")) {
+            out.write(digits.length());
+            out.write(address.startsWith("+") ? 0x91 : 0x81);
+            for (int k = 0; k < digits.length(); k += 2) {
+                int low = digits.charAt(k) - '0';
+                int high = k + 1 < digits.length() ? digits.charAt(k + 1) - '0' : 0x0f;
+                out.write((high << 4) | low);
+            }
+            return;
+        }
+
+        // Letters, digits and '-' have the same codes in the GSM default alphabet as in ASCII
+        byte[] packed = packGsm7(address);
+        out.write((address.length() * 7 + 3) / 4); // useful semi-octets
+        out.write(0xd0);
+        out.write(packed, 0, packed.length);
+    }
+
+    private static byte[] packGsm7(String text) {
+        byte[] packed = new byte[(text.length() * 7 + 7) / 8];
+        int bit = 0;
+        for (int k = 0; k < text.length(); k++) {
+            int septet = text.charAt(k) & 0x7f;
+            int index = bit / 8;
+            int shift = bit % 8;
+            packed[index] |= (byte) (septet << shift);
+            if (shift > 1) {
+                packed[index + 1] |= (byte) (septet >> (8 - shift));
+            }
+            bit += 7;
+        }
+        return packed;
+    }
+
+    private static void writeTimestamp(ByteArrayOutputStream out, long timestampMillis) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(timestampMillis);
+        writeSemiOctets(out, calendar.get(Calendar.YEAR) % 100);
+        writeSemiOctets(out, calendar.get(Calendar.MONTH) + 1);
+        writeSemiOctets(out, calendar.get(Calendar.DAY_OF_MONTH));
+        writeSemiOctets(out, calendar.get(Calendar.HOUR_OF_DAY));
+        writeSemiOctets(out, calendar.get(Calendar.MINUTE));
+        writeSemiOctets(out, calendar.get(Calendar.SECOND));
+        out.write(0x00);                         // UTC
+    }
+
+    private static void writeSemiOctets(ByteArrayOutputStream out, int value) {
+        out.write(((value % 10) << 4) | (value / 10));
+    }
+}
@@ -0,0 +1,195 @@
+package com.snagotp.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.Telephony;
+import com.snagotp.core.MessageRecord;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Paging against a fake SMS provider: the query asks for rows after the checkpoint in ascending _id
+ * order with a LIMIT in the sort order, and cursor columns are mapped by name
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SmsProviderSourceTest {
+    private static final String AUTHORITY = "com.snagotp.test.sms";
+    private static final Uri URI = Uri.parse("content://" + AUTHORITY + "/inbox");
+
+    private FakeSmsProvider provider;
+    private SmsProviderSource source;
+
+    @Before
+    public void setUp() {
+        provider = Robolectric.buildContentProvider(FakeSmsProvider.class).create(AUTHORITY).get();
+        source = new SmsProviderSource(RuntimeEnvironment.getApplication().getContentResolver(), URI);
+    }
+
+    @Test
+    public void mapsCursorColumnsToRecords() throws IOException {
+        provider.add(7, "AX-HDFCBK", "Your OTP is 482913", 1700000000000L);
+        provider.add(9, null, "Code 1234", 1700000001000L);
+
+        List<MessageRecord> page = source.readPage(0, 10);
+        assertEquals(2, page.size());
+        MessageRecord first = page.get(0);
+        assertEquals(7, first.getId());
+        assertEquals("AX-HDFCBK", first.getSender());
+        assertEquals("Your OTP is 482913", first.getBody());
+        assertEquals(1700000000000L, first.getTimestampMillis());
+        assertEquals(9, page.get(1).getId());
+        assertNull(page.get(1).getSender());
+    }
+
+    @Test
+    public void queriesAfterTheCheckpointInAscendingIdOrder() throws IOException {
+        // Stored newest first, as the inbox is displayed
+        for (long id = 10; id >= 1; id--) {
+            provider.add(id, "AX-HDFCBK", "Message " + id, id * 1000);
+        }
+
+        assertEquals(Arrays.asList(5L, 6L, 7L), ids(source.readPage(4, 3)));
+        assertEquals(Telephony.Sms._ID + " > ?", provider.lastSelection);
+        assertArrayEquals(new String[] {"4"}, provider.lastSelectionArgs);
+        assertEquals(Telephony.Sms._ID + " ASC LIMIT 3", provider.lastSortOrder);
+        assertTrue(Arrays.asList(provider.lastProjection).containsAll(Arrays.asList(
+                Telephony.Sms._ID, Telephony.Sms.ADDRESS, Telephony.Sms.BODY, Telephony.Sms.DATE)));
+
+        assertEquals(Arrays.asList(8L, 9L, 10L), ids(source.readPage(7, 3)));
+        assertTrue(source.readPage(10, 3).isEmpty());
+    }
+
+    @Test
+    public void pageIsTrimmedWhenTheLimitIsIgnored() throws IOException {
+        for (long id = 1; id <= 10; id++) {
+            provider.add(id, "AX-HDFCBK", "Message " + id, id * 1000);
+        }
+        provider.ignoreLimit = true;
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), ids(source.readPage(0, 4)));
+    }
+
+    @Test
+    public void missingPermissionIsReportedAsIoException() {
+        provider.denied = true;
+        try {
+            source.readPage(0, 10);
+            fail("Denied query was not reported");
+        } catch (IOException expected) {
+            assertTrue(expected.getCause() instanceof SecurityException);
+        }
+    }
+
+    private static List<Long> ids(List<MessageRecord> page) {
+        List<Long> ids = new ArrayList<>();
+        for (MessageRecord record : page) {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Serves the Telephony.Sms columns from memory and honours "_id > ?" with "ASC LIMIT n" like the
+     * platform provider; columns come back in their own order, not the projection's
+     */
+    public static final class FakeSmsProvider extends ContentProvider {
+        private static final Pattern LIMIT = Pattern.compile("LIMIT (\\d+)");
+        private static final String[] COLUMNS = {
+            Telephony.Sms.BODY, Telephony.Sms.TYPE, Telephony.Sms.DATE, Telephony.Sms._ID, Telephony.Sms.ADDRESS
+        };
+
+        private final List<Object[]> rows = new ArrayList<>();
+        boolean ignoreLimit;
+        boolean denied;
+        String[] lastProjection;
+        String lastSelection;
+        String[] lastSelectionArgs;
+        String lastSortOrder;
+
+        void add(long id, String address, String body, long date) {
+            rows.add(new Object[] {body, Telephony.Sms.MESSAGE_TYPE_INBOX, date, id, address});
+        }
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                String sortOrder) {
+            if (denied) {
+                throw new SecurityException("Permission Denial: reading SMS requires READ_SMS");
+            }
+            lastProjection = projection;
+            lastSelection = selection;
+            lastSelectionArgs = selectionArgs;
+            lastSortOrder = sortOrder;
+
+            long afterId = Long.parseLong(selectionArgs[0]);
+            List<Object[]> matching = new ArrayList<>();
+            for (Object[] row : rows) {
+                if ((Long) row[3] > afterId) {
+                    matching.add(row);
+                }
+            }
+            Collections.sort(matching, new Comparator<Object[]>() {
+                @Override
+                public int compare(Object[] a, Object[] b) {
+                    return Long.compare((Long) a[3], (Long) b[3]);
+                }
+            });
+            Matcher limit = LIMIT.matcher(sortOrder);
+            int count = matching.size();
+            if (!ignoreLimit && limit.find()) {
+                count = Math.min(count, Integer.parseInt(limit.group(1)));
+            }
+            MatrixCursor cursor = new MatrixCursor(COLUMNS);
+            for (int i = 0; i < count; i++) {
+                cursor.addRow(matching.get(i));
+            }
+            return cursor;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
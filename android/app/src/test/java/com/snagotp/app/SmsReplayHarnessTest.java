@@ -0,0 +1,284 @@
+package com.snagotp.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Looper;
+import com.snagotp.core.ExtractionMetrics;
+import com.snagotp.core.MessageFingerprint;
+import com.snagotp.core.OtpScanner;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Replays a synthetic SMS corpus through SmsReceiver as real SMS_RECEIVED broadcasts
+ * Measures, end to end through the receiver, worker, journal and clipboard writer:
+ *   - throughput: the whole corpus sent back to back until the worker has drained
+ *   - time-to-clipboard: short bursts, from the last broadcast of a burst until its OTP is on
+ *     the clipboard (includes the clipboard coalescing window)
+ *   - accuracy per OTP pattern, checked against the history journal
+ * The report is printed and written to build/reports/sms-replay.txt
+ *
+ * Scale with Gradle properties, which the build forwards as system properties, e.g.
+ *   ./gradlew :app:testDebugUnitTest --tests '*SmsReplayHarnessTest' -Preplay.messages=20000
+ * replay.messages, replay.noisePercent, replay.bursts, replay.burstSize, replay.seed
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SmsReplayHarnessTest {
+    private static final String SMS_RECEIVED_ACTION = "android.provider.Telephony.SMS_RECEIVED";
+    private static final long START_MILLIS = 1700000000000L;
+    private static final long CLIPBOARD_TIMEOUT_MILLIS = 5000;
+    private static final long DRAIN_TIMEOUT_MILLIS = 60000;
+
+    private final int messageCount = Integer.getInteger("replay.messages", 2000);
+    private final int noisePercent = Integer.getInteger("replay.noisePercent", 25);
+    private final int burstCount = Integer.getInteger("replay.bursts", 20);
+    private final int burstSize = Integer.getInteger("replay.burstSize", 5);
+    private final long seed = Long.getLong("replay.seed", 42L);
+
+    private Context context;
+    private final Map<String, Long> clipboardWrites = new ConcurrentHashMap<>();
+
+    @Test
+    public void replayCorpus() throws Exception {
+        context = RuntimeEnvironment.getApplication();
+        // Registered explicitly: the manifest receiver requires a sender permission the test broadcast lacks
+        context.registerReceiver(new SmsReceiver(), new IntentFilter(SMS_RECEIVED_ACTION));
+        watchClipboard();
+        ExtractionMetrics.getInstance().reset();
+
+        SmsCorpusGenerator generator = new SmsCorpusGenerator(seed);
+        List<SmsCorpusGenerator.SyntheticSms> corpus = generator.generate(messageCount, noisePercent, START_MILLIS);
+        List<SmsCorpusGenerator.SyntheticSms> burstCorpus = generator.generate(burstCount * burstSize, 0,
+                START_MILLIS + messageCount * 1000L);
+
+        // Throughput: back to back, draining before the bus would have to drop a message
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < corpus.size(); i++) {
+            if (i > 0 && i % (IngestionBus.QUEUE_CAPACITY / 2) == 0) {
+                awaitWorkerDrained();
+            }
+            deliver(corpus.get(i));
+        }
+        awaitWorkerDrained();
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        Accuracy accuracy = checkAccuracy(corpus);
+
+        // Time-to-clipboard: let the last throughput write settle, then one burst at a time
+        Thread.sleep(ClipboardWriter.COALESCE_WINDOW_MILLIS * 2);
+        long[] latencies = new long[burstCount];
+        int timeouts = 0;
+        for (int b = 0; b < burstCount; b++) {
+            List<SmsCorpusGenerator.SyntheticSms> burst = burstCorpus.subList(b * burstSize, (b + 1) * burstSize);
+            long sentNanos = 0;
+            for (SmsCorpusGenerator.SyntheticSms sms : burst) {
+                sentNanos = System.nanoTime();
+                deliver(sms);
+            }
+            Long written = awaitClipboard(burst.get(burst.size() - 1).expectedCode);
+            if (written == null) {
+                timeouts++;
+                latencies[b] = Long.MAX_VALUE;
+            } else {
+                latencies[b] = written - sentNanos;
+            }
+        }
+        Arrays.sort(latencies);
+
+        String report = buildReport(corpus.size(), elapsedNanos, accuracy, latencies, timeouts);
+        System.out.println(report);
+        writeReport(report);
+
+        assertEquals("Messages with a wrong or missing OTP", 0, accuracy.totalErrors());
+        assertEquals("Noise messages that produced an OTP", 0, accuracy.falsePositives);
+        assertEquals("Bursts whose OTP never reached the clipboard", 0, timeouts);
+        assertEquals("Messages dropped by a full ingestion queue", 0, ExtractionMetrics.getInstance().getIngestionDrops());
+    }
+
+    /**
+     * Broadcast one message the way the telephony stack does and dispatch it to the receiver
+     */
+    private void deliver(SmsCorpusGenerator.SyntheticSms sms) {
+        byte[][] parts = SmsPduEncoder.encode(sms.sender, sms.body, sms.timestampMillis);
+        Object[] pdus = new Object[parts.length];
+        System.arraycopy(parts, 0, pdus, 0, parts.length);
+
+        Intent intent = new Intent(SMS_RECEIVED_ACTION);
+        intent.putExtra("pdus", pdus);
+        intent.putExtra("format", "3gpp");
+        context.sendBroadcast(intent);
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /**
+     * Wait until every queued message has been processed
+     * The worker is single-threaded and FIFO, so a marker task running on it means all earlier
+     * messages are done
+     */
+    private void awaitWorkerDrained() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        IngestionBus.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        if (!done.await(DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            throw new AssertionError("SMS worker did not drain");
+        }
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private void watchClipboard() {
+        final ClipboardManager clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
+        clipboard.addPrimaryClipChangedListener(new ClipboardManager.OnPrimaryClipChangedListener() {
+            @Override
+            public void onPrimaryClipChanged() {
+                long now = System.nanoTime();
+                ClipData clip = clipboard.getPrimaryClip();
+                if (clip != null && clip.getItemCount() > 0 && clip.getItemAt(0).getText() != null) {
+                    clipboardWrites.put(clip.getItemAt(0).getText().toString(), now);
+                }
+            }
+        });
+    }
+
+    private Long awaitClipboard(String code) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CLIPBOARD_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            Long written = clipboardWrites.get(code);
+            if (written != null) {
+                shadowOf(Looper.getMainLooper()).idle();
+                return written;
+            }
+            Thread.sleep(1);
+        }
+        return null;
+    }
+
+    /**
+     * Compare the history journal against the corpus, keyed by message fingerprint
+     */
+    private Accuracy checkAccuracy(List<SmsCorpusGenerator.SyntheticSms> corpus) throws IOException, InterruptedException {
+        OtpHistoryJournal journal = OtpHistoryJournal.getInstance(context);
+        // Records reach the journal through its own writer thread; wait until the count settles
+        int size = -1;
+        while (true) {
+            Thread.sleep(50);
+            int current = journal.size();
+            if (current == size) {
+                break;
+            }
+            size = current;
+        }
+
+        Map<Long, OtpRecord> records = new HashMap<>();
+        for (OtpRecord record : journal.readRecent(size)) {
+            records.put(record.getMessageHash(), record);
+        }
+
+        Accuracy accuracy = new Accuracy();
+        for (SmsCorpusGenerator.SyntheticSms sms : corpus) {
+            OtpRecord record = records.get(MessageFingerprint.of(sms.body));
+            if (sms.isNoise()) {
+                if (record != null) {
+                    accuracy.falsePositives++;
+                }
+                continue;
+            }
+            int p = sms.expectedPattern;
+            accuracy.total[p]++;
+            if (record == null) {
+                accuracy.missed[p]++;
+            } else if (!sms.expectedCode.equals(record.getCode())) {
+                accuracy.wrongCode[p]++;
+            } else if (record.getPatternIndex() != p) {
+                accuracy.wrongPattern[p]++;
+            } else {
+                accuracy.correct[p]++;
+            }
+        }
+        return accuracy;
+    }
+
+    private String buildReport(int messages, long elapsedNanos, Accuracy accuracy, long[] latencies, int timeouts) {
+        StringBuilder report = new StringBuilder();
+        report.append("SMS replay (seed ").append(seed).append(")\n");
+        report.append(String.format("Throughput: %d messages in %.1f ms, %.0f messages/s%n",
+                messages, elapsedNanos / 1e6, messages / (elapsedNanos / 1e9)));
+        report.append(String.format("Time to clipboard over %d bursts of %d: p50 %s, p99 %s, timeouts %d%n",
+                latencies.length, burstSize, formatMillis(percentile(latencies, 50)),
+                formatMillis(percentile(latencies, 99)), timeouts));
+        report.append("Accuracy by pattern (correct/total, wrong code, wrong pattern, missed):\n");
+        for (int p = 1; p <= OtpScanner.PATTERN_COUNT; p++) {
+            report.append(String.format("  pattern %d: %d/%d, %d, %d, %d%n", p, accuracy.correct[p],
+                    accuracy.total[p], accuracy.wrongCode[p], accuracy.wrongPattern[p], accuracy.missed[p]));
+        }
+        report.append("  noise false positives: ").append(accuracy.falsePositives).append('\n');
+        report.append('\n').append(ExtractionMetrics.getInstance().dump());
+        return report.toString();
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String formatMillis(long nanos) {
+        if (nanos < 0) {
+            return "n/a";
+        }
+        return nanos == Long.MAX_VALUE ? "timeout" : String.format("%.1f ms", nanos / 1e6);
+    }
+
+    private static void writeReport(String report) throws IOException {
+        File directory = new File("build/reports");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        FileWriter writer = new FileWriter(new File(directory, "sms-replay.txt"));
+        try {
+            writer.write(report);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static final class Accuracy {
+        final int[] total = new int[OtpScanner.PATTERN_COUNT + 1];
+        final int[] correct = new int[OtpScanner.PATTERN_COUNT + 1];
+        final int[] wrongCode = new int[OtpScanner.PATTERN_COUNT + 1];
+        final int[] wrongPattern = new int[OtpScanner.PATTERN_COUNT + 1];
+        final int[] missed = new int[OtpScanner.PATTERN_COUNT + 1];
+        int falsePositives;
+
+        int totalErrors() {
+            int errors = 0;
+            for (int p = 1; p <= OtpScanner.PATTERN_COUNT; p++) {
+                errors += wrongCode[p] + wrongPattern[p] + missed[p];
+            }
+            return errors;
+        }
+    }
+}
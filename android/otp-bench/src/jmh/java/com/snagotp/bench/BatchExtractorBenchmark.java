@@ -0,0 +1,63 @@
+package com.snagotp.bench;
+
+import com.snagotp.core.BatchExtractor;
+import com.snagotp.core.MessageRecord;
+import com.snagotp.core.OtpMatch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for bulk extraction over a mixed history of messages
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchExtractorBenchmark {
+
+    @Param({"1000", "10000"})
+    public int batchSize;
+
+    private List<MessageRecord> messages;
+    private BatchExtractor parallel;
+    private BatchExtractor sequential;
+
+    @Setup
+    public void setUp() {
+        String[] bodies = {
+            BenchmarkMessages.SHORT, BenchmarkMessages.LONG,
+            BenchmarkMessages.MULTILINGUAL, BenchmarkMessages.NO_OTP
+        };
+        messages = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            messages.add(new MessageRecord("VM-BENCH", bodies[i % bodies.length], i));
+        }
+        parallel = new BatchExtractor();
+        sequential = new BatchExtractor(Integer.MAX_VALUE, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public List<OtpMatch> extractParallel() {
+        return parallel.extract(messages);
+    }
+
+    @Benchmark
+    public List<OtpMatch> extractSequential() {
+        return sequential.extract(messages);
+    }
+}
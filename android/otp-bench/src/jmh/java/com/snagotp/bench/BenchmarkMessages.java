@@ -0,0 +1,39 @@
+package com.snagotp.bench;
+
+/**
+ * Sample SMS bodies shared by the extraction benchmarks
+ * Each kind exercises a different path through the scanner
+ */
+final class BenchmarkMessages {
+    static final String SHORT = "Your OTP is 482913. Do not share it with anyone.";
+
+    static final String LONG = "Dear Customer, Rs. 12,500.00 has been debited from your A/c XX4821 on 14-10-2026 "
+            + "at AMAZON PAY INDIA towards order 402-1183921-77. Available balance is Rs. 48,210.55. "
+            + "If this transaction was not initiated by you, please call 1800 202 6161 immediately or "
+            + "SMS BLOCK 4821 to 5676766. To authorise the payment use verification code 739104, valid "
+            + "for 10 minutes. Never share your code, PIN or card details with anyone, including bank staff.";
+
+    static final String MULTILINGUAL = "प्रिय ग्राहक, आपका लेन-देन सत्यापित करने के लिए कोड 582017 है। "
+            + "您的验证码是 582017，请勿泄露。 Su código de verificación es 582017.";
+
+    static final String NO_OTP = "Flat 50% off on all summer styles this weekend only! Visit your nearest store "
+            + "or shop online. T&C apply. To unsubscribe reply STOP.";
+
+    private BenchmarkMessages() {
+    }
+
+    static String forKind(String kind) {
+        switch (kind) {
+            case "short":
+                return SHORT;
+            case "long":
+                return LONG;
+            case "multilingual":
+                return MULTILINGUAL;
+            case "noOtp":
+                return NO_OTP;
+            default:
+                throw new IllegalArgumentException("Unknown message kind: " + kind);
+        }
+    }
+}
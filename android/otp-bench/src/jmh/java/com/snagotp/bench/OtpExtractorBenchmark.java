@@ -0,0 +1,53 @@
+package com.snagotp.bench;
+
+import com.snagotp.core.OtpExtractor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput benchmark for OTP extraction
+ * Run with: ./gradlew :otp-bench:jmh (allocation rate comes from the gc profiler)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OtpExtractorBenchmark {
+
+    @Param({"short", "long", "multilingual", "noOtp"})
+    public String messageKind;
+
+    private String message;
+
+    @Setup
+    public void setUp() {
+        message = BenchmarkMessages.forKind(messageKind);
+    }
+
+    @Benchmark
+    public String extractOtp() {
+        return OtpExtractor.extractOtp(message);
+    }
+
+    @Benchmark
+    public boolean mayContainOtp() {
+        return OtpExtractor.mayContainOtp(message);
+    }
+
+    @Benchmark
+    public String extractAndValidateOtp() {
+        return OtpExtractor.extractAndValidateOtp(message);
+    }
+}
@@ -0,0 +1,122 @@
+package com.snagotp.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Extracts OTPs from many messages at once, e.g. when rescanning history or importing threads
+ * Small batches run on the calling thread; larger ones are split across a ForkJoinPool
+ * Results are always returned in input order
+ */
+public final class BatchExtractor {
+    /** Batches smaller than this are extracted sequentially */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 256;
+
+    private final int parallelThreshold;
+    private final ForkJoinPool pool;
+
+    /**
+     * Create an extractor using the common pool and the default threshold
+     */
+    public BatchExtractor() {
+        this(DEFAULT_PARALLEL_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param parallelThreshold Batch size at or above which work is forked; also the size of each forked chunk
+     * @param pool Pool used for parallel extraction
+     */
+    public BatchExtractor(int parallelThreshold, ForkJoinPool pool) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("parallelThreshold must be positive: " + parallelThreshold);
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("pool must not be null");
+        }
+        this.parallelThreshold = parallelThreshold;
+        this.pool = pool;
+    }
+
+    /**
+     * Extract OTPs from a list of messages
+     *
+     * @param messages Messages to scan
+     * @return One entry per message in the same order; an entry is null when that message has no OTP
+     */
+    public List<OtpMatch> extract(List<MessageRecord> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        MessageRecord[] input = messages.toArray(new MessageRecord[0]);
+        OtpMatch[] results = new OtpMatch[input.length];
+
+        if (input.length < parallelThreshold) {
+            extractRange(input, results, 0, input.length);
+        } else {
+            pool.invoke(new ExtractTask(input, results, 0, input.length, parallelThreshold));
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Extract OTPs from a stream of messages
+     * The stream is drained first so that results can be returned in encounter order
+     *
+     * @param messages Messages to scan
+     * @return One entry per message in encounter order; an entry is null when that message has no OTP
+     */
+    public List<OtpMatch> extract(Stream<MessageRecord> messages) {
+        if (messages == null) {
+            return Collections.emptyList();
+        }
+        List<MessageRecord> collected = messages.collect(Collectors.toList());
+        return extract(collected);
+    }
+
+    private static void extractRange(MessageRecord[] input, OtpMatch[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            MessageRecord message = input[i];
+            results[i] = message != null && message.getBody() != null ? OtpExtractor.scan(message.getBody()) : null;
+        }
+    }
+
+    /**
+     * Splits a range in half until it is no larger than the threshold
+     * Each leaf writes into its own slice of the shared results array
+     */
+    private static final class ExtractTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final MessageRecord[] input;
+        private final OtpMatch[] results;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        ExtractTask(MessageRecord[] input, OtpMatch[] results, int from, int to, int threshold) {
+            this.input = input;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                extractRange(input, results, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ExtractTask(input, results, from, mid, threshold),
+                    new ExtractTask(input, results, mid, to, threshold));
+        }
+    }
+}
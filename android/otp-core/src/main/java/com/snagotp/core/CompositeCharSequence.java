@@ -0,0 +1,114 @@
+package com.snagotp.core;
+
+/**
+ * Read-only CharSequence view over several parts, e.g. the bodies of a multipart SMS
+ * Lets the scanner read across part boundaries without concatenating the parts into one String
+ * Sequential charAt calls are O(1); the view is not safe for concurrent use
+ */
+public final class CompositeCharSequence implements CharSequence {
+    private final CharSequence[] parts;
+    // offsets[i] is the index of the first char of parts[i]; offsets[parts.length] is the total length
+    private final int[] offsets;
+    // Part that served the last charAt, so sequential reads avoid a search
+    private int cachedPart;
+
+    private CompositeCharSequence(CharSequence[] parts, int[] offsets) {
+        this.parts = parts;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Create a view over the given parts
+     * Null or empty parts are skipped; a single remaining part is returned as-is
+     *
+     * @param parts Message parts in order
+     * @return A CharSequence spanning all parts
+     */
+    public static CharSequence of(CharSequence... parts) {
+        if (parts == null) {
+            return "";
+        }
+
+        int count = 0;
+        for (CharSequence part : parts) {
+            if (part != null && part.length() > 0) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return "";
+        }
+
+        CharSequence[] kept = new CharSequence[count];
+        int[] offsets = new int[count + 1];
+        int k = 0;
+        for (CharSequence part : parts) {
+            if (part != null && part.length() > 0) {
+                kept[k] = part;
+                offsets[k + 1] = offsets[k] + part.length();
+                k++;
+            }
+        }
+        return count == 1 ? kept[0] : new CompositeCharSequence(kept, offsets);
+    }
+
+    @Override
+    public int length() {
+        return offsets[parts.length];
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+        }
+        int part = cachedPart;
+        if (index < offsets[part] || index >= offsets[part + 1]) {
+            part = findPart(index);
+            cachedPart = part;
+        }
+        return parts[part].charAt(index - offsets[part]);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(length());
+        for (CharSequence part : parts) {
+            builder.append(part);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return Number of parts in the view
+     */
+    public int getPartCount() {
+        return parts.length;
+    }
+
+    private int findPart(int index) {
+        int low = 0;
+        int high = parts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
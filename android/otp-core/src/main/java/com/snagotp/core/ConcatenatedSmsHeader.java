@@ -0,0 +1,102 @@
+package com.snagotp.core;
+
+/**
+ * Concatenation information element of one part of a multipart SMS
+ * Read straight from a 3GPP TS 23.040 SMS-DELIVER PDU, since the platform's SmsMessage does not expose
+ * the user data header; both the 8-bit (IEI 0x00) and 16-bit (IEI 0x08) reference forms are understood
+ */
+public final class ConcatenatedSmsHeader {
+    private static final int IEI_CONCAT_8BIT = 0x00;
+    private static final int IEI_CONCAT_16BIT = 0x08;
+    private static final int TP_UDHI = 0x40;
+    private static final int TP_MTI_MASK = 0x03;
+    private static final int SCTS_LENGTH = 7;
+
+    private final int reference;
+    private final int partCount;
+    private final int partNumber;
+
+    public ConcatenatedSmsHeader(int reference, int partCount, int partNumber) {
+        if (partCount < 1 || partNumber < 1 || partNumber > partCount) {
+            throw new IllegalArgumentException("Bad part " + partNumber + " of " + partCount);
+        }
+        this.reference = reference;
+        this.partCount = partCount;
+        this.partNumber = partNumber;
+    }
+
+    /**
+     * @param pdu SMS-DELIVER PDU including the leading SMSC address, as in SMS_RECEIVED "pdus"
+     * @return The concatenation header, or null for a single-part message or a PDU that cannot be read
+     */
+    public static ConcatenatedSmsHeader parse(byte[] pdu) {
+        if (pdu == null || pdu.length < 2) {
+            return null;
+        }
+        int i = 1 + (pdu[0] & 0xff);                  // skip SMSC address
+        if (i >= pdu.length) {
+            return null;
+        }
+        int firstOctet = pdu[i++] & 0xff;
+        if ((firstOctet & TP_MTI_MASK) != 0 || (firstOctet & TP_UDHI) == 0) {
+            return null;
+        }
+        if (i >= pdu.length) {
+            return null;
+        }
+        int addressDigits = pdu[i] & 0xff;
+        i += 2 + (addressDigits + 1) / 2;             // length, type of address, semi-octets
+        i += 2 + SCTS_LENGTH;                         // protocol identifier, coding scheme, timestamp
+        i++;                                          // user data length
+        if (i >= pdu.length) {
+            return null;
+        }
+        int headerEnd = i + 1 + (pdu[i] & 0xff);
+        if (headerEnd > pdu.length) {
+            return null;
+        }
+        i++;
+        while (i + 2 <= headerEnd) {
+            int iei = pdu[i] & 0xff;
+            int length = pdu[i + 1] & 0xff;
+            int data = i + 2;
+            if (data + length > headerEnd) {
+                return null;
+            }
+            if (iei == IEI_CONCAT_8BIT && length == 3) {
+                return create(pdu[data] & 0xff, pdu[data + 1] & 0xff, pdu[data + 2] & 0xff);
+            }
+            if (iei == IEI_CONCAT_16BIT && length == 4) {
+                return create(((pdu[data] & 0xff) << 8) | (pdu[data + 1] & 0xff),
+                        pdu[data + 2] & 0xff, pdu[data + 3] & 0xff);
+            }
+            i = data + length;
+        }
+        return null;
+    }
+
+    private static ConcatenatedSmsHeader create(int reference, int partCount, int partNumber) {
+        if (partCount < 1 || partNumber < 1 || partNumber > partCount) {
+            return null;
+        }
+        return new ConcatenatedSmsHeader(reference, partCount, partNumber);
+    }
+
+    /**
+     * @return Reference shared by all parts of the message
+     */
+    public int getReference() {
+        return reference;
+    }
+
+    public int getPartCount() {
+        return partCount;
+    }
+
+    /**
+     * @return 1-based position of this part
+     */
+    public int getPartNumber() {
+        return partNumber;
+    }
+}
@@ -0,0 +1,95 @@
+package com.snagotp.core;
+
+/**
+ * Small fixed-capacity cache of recently seen keys that expire after a time-to-live
+ * Used to drop the same message or code arriving again via a second channel or a resend
+ * Keys are 64-bit fingerprints; with a capacity of a few dozen a linear scan beats hashing
+ * When full, the oldest entry is overwritten
+ */
+public final class DedupCache {
+    private final long[] keys;
+    // 0 marks an empty slot
+    private final long[] expiresAt;
+    private final long ttlMillis;
+    private int next;
+
+    /**
+     * @param capacity Maximum number of keys remembered
+     * @param ttlMillis How long a key counts as a duplicate after it was last seen
+     */
+    public DedupCache(int capacity, long ttlMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (ttlMillis < 1) {
+            throw new IllegalArgumentException("ttlMillis must be positive: " + ttlMillis);
+        }
+        this.keys = new long[capacity];
+        this.expiresAt = new long[capacity];
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Combine a sender and a message fingerprint into one key
+     *
+     * @param serviceId Sender's id from {@link SenderNormalizer}, or {@link SenderNormalizer#UNKNOWN}
+     * @param messageFingerprint Fingerprint of the message body
+     * @return Key for {@link #checkAndAdd}
+     */
+    public static long messageKey(int serviceId, long messageFingerprint) {
+        return (serviceId + 1L) * 0x9E3779B97F4A7C15L + messageFingerprint;
+    }
+
+    /**
+     * Record a key and report whether it was already present and unexpired
+     * A duplicate refreshes the entry's expiry
+     *
+     * @param key Key to check
+     * @param nowMillis Current time from a monotonic clock
+     * @return true if the key is a duplicate
+     */
+    public synchronized boolean checkAndAdd(long key, long nowMillis) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key && expiresAt[i] != 0) {
+                if (expiresAt[i] > nowMillis) {
+                    expiresAt[i] = nowMillis + ttlMillis;
+                    return true;
+                }
+                // Expired: reuse this slot for the fresh sighting
+                expiresAt[i] = nowMillis + ttlMillis;
+                return false;
+            }
+        }
+
+        keys[next] = key;
+        expiresAt[next] = nowMillis + ttlMillis;
+        next = (next + 1) % keys.length;
+        return false;
+    }
+
+    /**
+     * Report whether a key is present and unexpired, without recording or refreshing it
+     *
+     * @param key Key to check
+     * @param nowMillis Current time from a monotonic clock
+     * @return true if {@link #checkAndAdd} would report the key as a duplicate
+     */
+    public synchronized boolean contains(long key, long nowMillis) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key && expiresAt[i] != 0) {
+                return expiresAt[i] > nowMillis;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget all keys
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < expiresAt.length; i++) {
+            expiresAt[i] = 0;
+        }
+        next = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.snagotp.core;
+
+import java.util.Arrays;
+
+/**
+ * Decimal digits of the scripts OTPs arrive in, folded to ASCII while scanning
+ * A code written as "१२३४५६" or "١٢٣٤٥٦" is recognised like "123456" and extracted in ASCII, without
+ * normalizing a copy of the message first
+ * The lookup is a precomputed two-level table keyed by the high and low byte of the char; ASCII is
+ * decided by two comparisons and never reaches the table
+ */
+public final class DigitFolding {
+    // Code point of digit zero of each supported script; digits 1-9 follow it
+    private static final char[] ZEROS = {
+        '0', // ASCII
+        '٠', // Arabic-Indic
+        '۰', // Extended Arabic-Indic (Persian, Urdu)
+        '०', // Devanagari
+        '০', // Bengali
+        '੦', // Gurmukhi
+        '૦', // Gujarati
+        '୦', // Oriya
+        '௦', // Tamil
+        '౦', // Telugu
+        '೦', // Kannada
+        '൦', // Malayalam
+        '０'  // Full-width
+    };
+
+    // Lowest non-ASCII digit; anything between '9' and this is not a digit
+    private static final char FIRST_FOLDED = '٠';
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+    // Digit value per char, -1 for non-digits; pages without digits are null
+    private static final byte[][] PAGES = buildPages();
+
+    private DigitFolding() {
+        // Utility class
+    }
+
+    /**
+     * @return true if c is a decimal digit of a supported script
+     */
+    public static boolean isDigit(char c) {
+        if (c <= '9') {
+            return c >= '0';
+        }
+        return c >= FIRST_FOLDED && lookup(c) >= 0;
+    }
+
+    /**
+     * @return The ASCII digit for a digit of a supported script, otherwise c unchanged
+     */
+    public static char fold(char c) {
+        if (c < FIRST_FOLDED) {
+            return c;
+        }
+        int value = lookup(c);
+        return value >= 0 ? (char) ('0' + value) : c;
+    }
+
+    /**
+     * @param code An extracted code
+     * @return The code with its digits in ASCII; the same instance if it already was
+     */
+    public static String fold(String code) {
+        int length = code.length();
+        int i = 0;
+        while (i < length && code.charAt(i) < FIRST_FOLDED) {
+            i++;
+        }
+        if (i == length) {
+            return code;
+        }
+        char[] chars = code.toCharArray();
+        for (; i < length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static int lookup(char c) {
+        byte[] page = PAGES[c >>> PAGE_BITS];
+        return page != null ? page[c & PAGE_MASK] : -1;
+    }
+
+    private static byte[][] buildPages() {
+        byte[][] pages = new byte[1 << (Character.SIZE - PAGE_BITS)][];
+        for (char zero : ZEROS) {
+            for (int value = 0; value < 10; value++) {
+                char c = (char) (zero + value);
+                byte[] page = pages[c >>> PAGE_BITS];
+                if (page == null) {
+                    page = new byte[1 << PAGE_BITS];
+                    Arrays.fill(page, (byte) -1);
+                    pages[c >>> PAGE_BITS] = page;
+                }
+                page[c & PAGE_MASK] = (byte) value;
+            }
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,195 @@
+package com.snagotp.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters for OTP extraction, for deciding which formats to optimise or reorder
+ * Tracks hits per pattern, messages without an OTP, prefilter and validation rejections, template fast-path hits,
+ * messages dropped before extraction, and latency histograms for extraction and clipboard writes
+ * All recording is lock-free and allocation-free; {@link #dump()} formats a snapshot for display
+ */
+public final class ExtractionMetrics {
+    private static final ExtractionMetrics INSTANCE = new ExtractionMetrics();
+
+    // Index 0 counts messages with no OTP, 1..PATTERN_COUNT count hits per built-in pattern
+    // and the last slot counts hits from user-defined rules
+    private static final int CUSTOM_RULES_SLOT = OtpScanner.PATTERN_COUNT + 1;
+    private final AtomicLongArray patternHits = new AtomicLongArray(CUSTOM_RULES_SLOT + 1);
+    private final AtomicLong prefilterRejections = new AtomicLong();
+    private final AtomicLong validationRejections = new AtomicLong();
+    private final AtomicLong templateHits = new AtomicLong();
+    private final AtomicLong ingestionDrops = new AtomicLong();
+    private final LatencyHistogram extractionLatency = new LatencyHistogram();
+    private final LatencyHistogram clipboardLatency = new LatencyHistogram();
+
+    private ExtractionMetrics() {
+    }
+
+    /**
+     * @return The shared metrics registry
+     */
+    public static ExtractionMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record one extraction
+     *
+     * @param patternIndex The 1-based pattern that matched, or 0 if no OTP was found
+     * @param nanos Time taken
+     */
+    public void recordExtraction(int patternIndex, long nanos) {
+        if (patternIndex >= 0) {
+            patternHits.incrementAndGet(Math.min(patternIndex, CUSTOM_RULES_SLOT));
+        }
+        extractionLatency.record(nanos);
+    }
+
+    /**
+     * Record an extraction answered by a learned sender template
+     *
+     * @param patternIndex The 1-based pattern of the template
+     * @param nanos Time taken
+     */
+    public void recordTemplateHit(int patternIndex, long nanos) {
+        templateHits.incrementAndGet();
+        recordExtraction(patternIndex, nanos);
+    }
+
+    /**
+     * Record a message turned away by the prefilter without being scanned
+     *
+     * @param nanos Time taken
+     */
+    public void recordPrefilterRejection(long nanos) {
+        prefilterRejections.incrementAndGet();
+        recordExtraction(0, nanos);
+    }
+
+    /**
+     * Record an extracted OTP that failed validation
+     */
+    public void recordValidationRejection() {
+        validationRejections.incrementAndGet();
+    }
+
+    /**
+     * Record a message dropped unprocessed because the ingestion queue was full
+     */
+    public void recordIngestionDrop() {
+        ingestionDrops.incrementAndGet();
+    }
+
+    /**
+     * @param nanos Time taken by one clipboard write
+     */
+    public void recordClipboardWrite(long nanos) {
+        clipboardLatency.record(nanos);
+    }
+
+    /**
+     * @param patternIndex The 1-based pattern number
+     * @return Number of messages where that pattern produced the OTP
+     */
+    public long getPatternHits(int patternIndex) {
+        return patternHits.get(patternIndex);
+    }
+
+    /**
+     * @return Number of messages where a user-defined rule produced the OTP
+     */
+    public long getCustomRuleHits() {
+        return patternHits.get(CUSTOM_RULES_SLOT);
+    }
+
+    /**
+     * @return Number of messages in which no OTP was found
+     */
+    public long getNoOtpCount() {
+        return patternHits.get(0);
+    }
+
+    /**
+     * @return Number of messages the prefilter rejected; also counted in {@link #getNoOtpCount()}
+     */
+    public long getPrefilterRejections() {
+        return prefilterRejections.get();
+    }
+
+    public long getValidationRejections() {
+        return validationRejections.get();
+    }
+
+    public long getTemplateHits() {
+        return templateHits.get();
+    }
+
+    /**
+     * @return Number of messages dropped unprocessed because the ingestion queue was full
+     */
+    public long getIngestionDrops() {
+        return ingestionDrops.get();
+    }
+
+    public LatencyHistogram getExtractionLatency() {
+        return extractionLatency;
+    }
+
+    public LatencyHistogram getClipboardLatency() {
+        return clipboardLatency;
+    }
+
+    /**
+     * Clear all counters
+     */
+    public void reset() {
+        for (int i = 0; i < patternHits.length(); i++) {
+            patternHits.set(i, 0);
+        }
+        prefilterRejections.set(0);
+        validationRejections.set(0);
+        templateHits.set(0);
+        ingestionDrops.set(0);
+        extractionLatency.reset();
+        clipboardLatency.reset();
+    }
+
+    /**
+     * Format a plain-text snapshot of all counters
+     *
+     * @return Multi-line report
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder(512);
+        builder.append("Extractions\n");
+        for (int i = 1; i <= OtpScanner.PATTERN_COUNT; i++) {
+            builder.append("  pattern ").append(i).append(": ").append(patternHits.get(i)).append('\n');
+        }
+        builder.append("  custom rules: ").append(getCustomRuleHits()).append('\n');
+        builder.append("  no OTP: ").append(getNoOtpCount()).append('\n');
+        builder.append("  prefilter rejections: ").append(getPrefilterRejections()).append('\n');
+        builder.append("  template hits: ").append(getTemplateHits()).append('\n');
+        builder.append("  validation rejections: ").append(getValidationRejections()).append('\n');
+        builder.append("  dropped, queue full: ").append(getIngestionDrops()).append('\n');
+        appendHistogram(builder, "Extraction latency", extractionLatency);
+        appendHistogram(builder, "Clipboard write latency", clipboardLatency);
+        return builder.toString();
+    }
+
+    private static void appendHistogram(StringBuilder builder, String title, LatencyHistogram histogram) {
+        builder.append(title)
+                .append(" (n=").append(histogram.getTotalCount())
+                .append(", p50<").append(histogram.getPercentileMicros(50)).append("us")
+                .append(", p99<").append(histogram.getPercentileMicros(99)).append("us)\n");
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long count = histogram.getCount(i);
+            if (count == 0) {
+                continue;
+            }
+            long bound = LatencyHistogram.getUpperBoundMicros(i);
+            builder.append("  <").append(bound == Long.MAX_VALUE ? "inf" : String.valueOf(bound))
+                    .append("us: ").append(count).append('\n');
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.snagotp.core;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Incremental scan of a message store for OTPs received before the app was listening
+ * Messages are read in pages of ascending id, each page is run through a {@link BatchExtractor},
+ * and the id of the last message in the page is checkpointed once the sink has durably stored its OTPs;
+ * the next run continues after the checkpoint instead of rescanning everything
+ * Cancellation is checked between pages, so a cancelled run can be resumed later at no extra cost
+ */
+public final class InboxBackfill {
+    /** Default number of messages read per page */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    /**
+     * Message store read in pages, e.g. the SMS content provider or a fake in tests
+     */
+    public interface Source {
+        /**
+         * @param afterId Only messages with a larger id are returned
+         * @param limit Maximum number of messages
+         * @return Messages in ascending id order; empty when there are no more
+         * @throws IOException if the store cannot be read
+         */
+        List<MessageRecord> readPage(long afterId, int limit) throws IOException;
+    }
+
+    /**
+     * Where the id of the last processed message is kept between runs
+     */
+    public interface Checkpoint {
+        /**
+         * @return Id of the last processed message, or 0 if nothing has been processed
+         */
+        long load();
+
+        void save(long lastId);
+    }
+
+    /**
+     * Receives each OTP found, in message order
+     */
+    public interface Sink {
+        /**
+         * @return false if the OTP could not be stored; the run stops before checkpointing its page
+         */
+        boolean onOtp(MessageRecord message, OtpMatch match);
+
+        /**
+         * Called before the checkpoint moves past a page
+         *
+         * @return true once every OTP handed on so far is durably stored, false if some may be lost
+         * @throws IOException if waiting for the store fails
+         */
+        boolean commit() throws IOException;
+    }
+
+    private final Source source;
+    private final Checkpoint checkpoint;
+    private final Sink sink;
+    private final BatchExtractor extractor;
+    private final int pageSize;
+
+    private volatile boolean cancelled;
+    private volatile long scannedCount;
+    private volatile long foundCount;
+
+    /**
+     * @param source Message store
+     * @param checkpoint Checkpoint storage
+     * @param sink Receives OTPs found
+     * @param extractor Extractor used for each page
+     * @param pageSize Messages per page
+     */
+    public InboxBackfill(Source source, Checkpoint checkpoint, Sink sink, BatchExtractor extractor, int pageSize) {
+        if (source == null || checkpoint == null || sink == null || extractor == null) {
+            throw new IllegalArgumentException("source, checkpoint, sink and extractor are required");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        this.source = source;
+        this.checkpoint = checkpoint;
+        this.sink = sink;
+        this.extractor = extractor;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Scan from the checkpoint to the end of the store, or until cancelled
+     *
+     * @return true if the end of the store was reached, false if cancelled
+     * @throws IOException if the store cannot be read or the sink cannot store an OTP; progress up to
+     *         the last page the sink committed is kept
+     */
+    public boolean run() throws IOException {
+        long lastId = checkpoint.load();
+        while (!cancelled) {
+            List<MessageRecord> page = source.readPage(lastId, pageSize);
+            if (page.isEmpty()) {
+                return true;
+            }
+
+            long pageLastId = page.get(page.size() - 1).getId();
+            if (pageLastId <= lastId) {
+                throw new IOException("Source returned ids out of order: " + pageLastId + " after " + lastId);
+            }
+
+            List<OtpMatch> matches = extractor.extract(page);
+            for (int i = 0; i < page.size(); i++) {
+                OtpMatch match = matches.get(i);
+                if (match != null) {
+                    if (!sink.onOtp(page.get(i), match)) {
+                        throw new IOException("OTP from message " + page.get(i).getId() + " was not stored");
+                    }
+                    foundCount++;
+                }
+            }
+            if (!sink.commit()) {
+                throw new IOException("OTPs up to message " + pageLastId + " were not committed");
+            }
+
+            lastId = pageLastId;
+            checkpoint.save(lastId);
+            scannedCount += page.size();
+
+            if (page.size() < pageSize) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop after the page in progress; the checkpoint is kept for the next run
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return Messages scanned by this instance
+     */
+    public long getScannedCount() {
+        return scannedCount;
+    }
+
+    /**
+     * @return OTPs found by this instance
+     */
+    public long getFoundCount() {
+        return foundCount;
+    }
+}
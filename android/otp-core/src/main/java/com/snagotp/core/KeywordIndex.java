@@ -0,0 +1,282 @@
+package com.snagotp.core;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton over a keyword dictionary
+ * Feeding a message through {@link #step} one character at a time reports every keyword occurrence,
+ * overlapping ones included, at the character where it ends; the cost per character does not grow
+ * with the number of keywords
+ * Keywords are matched ignoring case: ASCII letters are folded directly, other characters with
+ * {@link Character#toLowerCase(char)}
+ * Immutable and safe for concurrent use
+ */
+public final class KeywordIndex {
+    /** State before any character has been read */
+    public static final int ROOT = 0;
+
+    private static final int NO_STATE = -1;
+
+    // Goto edges in compressed rows: the edges of state s are [edgeStart[s], edgeStart[s + 1]),
+    // sorted by label
+    private final int[] edgeStart;
+    private final char[] edgeLabel;
+    private final int[] edgeTarget;
+    // Root edges for ASCII characters, NO_STATE where there is none
+    private final int[] rootAscii;
+    private final int[] failure;
+    // Masks of all keywords ending in each state, including those reached through failure links
+    private final long[] output;
+
+    private KeywordIndex(int[] edgeStart, char[] edgeLabel, int[] edgeTarget, int[] rootAscii,
+                         int[] failure, long[] output) {
+        this.edgeStart = edgeStart;
+        this.edgeLabel = edgeLabel;
+        this.edgeTarget = edgeTarget;
+        this.rootAscii = rootAscii;
+        this.failure = failure;
+        this.output = output;
+    }
+
+    /**
+     * Build an index
+     * A keyword listed more than once reports the union of its masks
+     *
+     * @param keywords Keywords; null and empty entries are ignored
+     * @param masks Mask reported for each keyword, parallel to keywords
+     * @return The compiled index
+     */
+    public static KeywordIndex compile(List<String> keywords, long[] masks) {
+        if (keywords.size() != masks.length) {
+            throw new IllegalArgumentException("Expected one mask per keyword");
+        }
+
+        // Build the trie with sorted children so the flattened rows come out sorted
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Long> ownOutput = new ArrayList<>();
+        children.add(new TreeMap<Character, Integer>());
+        ownOutput.add(0L);
+        for (int k = 0; k < masks.length; k++) {
+            String keyword = keywords.get(k);
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            int state = ROOT;
+            for (int j = 0; j < keyword.length(); j++) {
+                char c = foldCase(keyword.charAt(j));
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    ownOutput.add(0L);
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ownOutput.set(state, ownOutput.get(state) | masks[k]);
+        }
+
+        int stateCount = children.size();
+        int edgeCount = stateCount - 1;
+        int[] edgeStart = new int[stateCount + 1];
+        char[] edgeLabel = new char[edgeCount];
+        int[] edgeTarget = new int[edgeCount];
+        int e = 0;
+        for (int s = 0; s < stateCount; s++) {
+            edgeStart[s] = e;
+            for (Map.Entry<Character, Integer> edge : children.get(s).entrySet()) {
+                edgeLabel[e] = edge.getKey();
+                edgeTarget[e] = edge.getValue();
+                e++;
+            }
+        }
+        edgeStart[stateCount] = e;
+
+        int[] rootAscii = rootAscii(edgeStart, edgeLabel, edgeTarget);
+
+        // Breadth-first: a state's failure target is always shallower, so it is done first
+        int[] failure = new int[stateCount];
+        long[] output = new long[stateCount];
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int k = edgeStart[ROOT]; k < edgeStart[ROOT + 1]; k++) {
+            int child = edgeTarget[k];
+            failure[child] = ROOT;
+            output[child] = ownOutput.get(child);
+            queue[tail++] = child;
+        }
+        KeywordIndex partial = new KeywordIndex(edgeStart, edgeLabel, edgeTarget, rootAscii, failure, output);
+        while (head < tail) {
+            int state = queue[head++];
+            for (int k = edgeStart[state]; k < edgeStart[state + 1]; k++) {
+                int child = edgeTarget[k];
+                int fallback = partial.step(failure[state], edgeLabel[k]);
+                failure[child] = fallback;
+                output[child] = ownOutput.get(child) | output[fallback];
+                queue[tail++] = child;
+            }
+        }
+        return partial;
+    }
+
+    /**
+     * Write the compiled tables, for {@link #readFrom}
+     *
+     * @param out Destination
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutput out) throws IOException {
+        int stateCount = failure.length;
+        out.writeInt(stateCount);
+        for (int start : edgeStart) {
+            out.writeInt(start);
+        }
+        for (char label : edgeLabel) {
+            out.writeChar(label);
+        }
+        for (int target : edgeTarget) {
+            out.writeInt(target);
+        }
+        for (int fallback : failure) {
+            out.writeInt(fallback);
+        }
+        for (long mask : output) {
+            out.writeLong(mask);
+        }
+    }
+
+    /**
+     * Read tables written by {@link #writeTo}, without recompiling
+     *
+     * @param in Source, positioned at the tables; advanced past them
+     * @return The index
+     * @throws IOException if the tables are not a well-formed automaton
+     */
+    static KeywordIndex readFrom(ByteBuffer in) throws IOException {
+        int stateCount = in.getInt();
+        if (stateCount < 1 || stateCount > in.remaining() / Long.BYTES) {
+            throw new IOException("Bad keyword index state count " + stateCount);
+        }
+        int edgeCount = stateCount - 1;
+        int[] edgeStart = new int[stateCount + 1];
+        char[] edgeLabel = new char[edgeCount];
+        int[] edgeTarget = new int[edgeCount];
+        int[] failure = new int[stateCount];
+        long[] output = new long[stateCount];
+        // Bulk copies through views; the per-element getters are far slower before the JIT warms up
+        in.asIntBuffer().get(edgeStart);
+        skip(in, edgeStart.length * Integer.BYTES);
+        in.asCharBuffer().get(edgeLabel);
+        skip(in, edgeCount * Character.BYTES);
+        in.asIntBuffer().get(edgeTarget);
+        skip(in, edgeCount * Integer.BYTES);
+        in.asIntBuffer().get(failure);
+        skip(in, stateCount * Integer.BYTES);
+        in.asLongBuffer().get(output);
+        skip(in, stateCount * Long.BYTES);
+
+        // Every lookup indexes with these, so check them once here
+        if (edgeStart[ROOT] != 0 || edgeStart[stateCount] != edgeCount) {
+            throw new IOException("Bad keyword index edge rows");
+        }
+        for (int s = 0; s < stateCount; s++) {
+            if (edgeStart[s] > edgeStart[s + 1] || failure[s] < 0 || failure[s] >= stateCount) {
+                throw new IOException("Bad keyword index state " + s);
+            }
+        }
+        for (int target : edgeTarget) {
+            if (target <= ROOT || target >= stateCount) {
+                throw new IOException("Bad keyword index edge target " + target);
+            }
+        }
+        return new KeywordIndex(edgeStart, edgeLabel, edgeTarget, rootAscii(edgeStart, edgeLabel, edgeTarget),
+                failure, output);
+    }
+
+    /**
+     * Advance the automaton by one character
+     *
+     * @param state Current state, {@link #ROOT} at the start of a message
+     * @param c Next character of the message
+     * @return The new state
+     */
+    public int step(int state, char c) {
+        char folded = foldCase(c);
+        while (true) {
+            int next = edge(state, folded);
+            if (next != NO_STATE) {
+                return next;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure[state];
+        }
+    }
+
+    /**
+     * @param state A state returned by {@link #step}
+     * @return Union of the masks of every keyword ending at the character that led to this state,
+     *         0 if none does
+     */
+    public long getMask(int state) {
+        return output[state];
+    }
+
+    /**
+     * @return Number of automaton states
+     */
+    public int getStateCount() {
+        return failure.length;
+    }
+
+    private int edge(int state, char c) {
+        if (state == ROOT && c < 0x80) {
+            return rootAscii[c];
+        }
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = edgeLabel[mid];
+            if (label < c) {
+                low = mid + 1;
+            } else if (label > c) {
+                high = mid - 1;
+            } else {
+                return edgeTarget[mid];
+            }
+        }
+        return NO_STATE;
+    }
+
+    // Called on Buffer: older Android lacks the ByteBuffer override a newer javac would link against
+    private static void skip(ByteBuffer in, int bytes) {
+        ((Buffer) in).position(in.position() + bytes);
+    }
+
+    private static int[] rootAscii(int[] edgeStart, char[] edgeLabel, int[] edgeTarget) {
+        int[] rootAscii = new int[0x80];
+        Arrays.fill(rootAscii, NO_STATE);
+        for (int k = edgeStart[ROOT]; k < edgeStart[ROOT + 1] && edgeLabel[k] < 0x80; k++) {
+            rootAscii[edgeLabel[k]] = edgeTarget[k];
+        }
+        return rootAscii;
+    }
+
+    static char foldCase(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+}
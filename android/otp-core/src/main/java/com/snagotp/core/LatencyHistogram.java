@@ -0,0 +1,89 @@
+package com.snagotp.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with fixed power-of-two microsecond buckets
+ * Bucket 0 counts samples under 1 us; bucket i counts samples in [2^(i-1), 2^i) us;
+ * the last bucket also takes everything slower
+ * Recording is a single atomic increment and never allocates
+ */
+public final class LatencyHistogram {
+    /** Number of buckets; the last one starts at about 1 second */
+    public static final int BUCKET_COUNT = 22;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * @param nanos Duration of one operation
+     */
+    public void record(long nanos) {
+        buckets.incrementAndGet(bucketFor(nanos));
+    }
+
+    /**
+     * @param bucket Bucket index
+     * @return Number of samples in the bucket
+     */
+    public long getCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @return Total number of samples
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param bucket Bucket index
+     * @return Exclusive upper bound of the bucket in microseconds, or Long.MAX_VALUE for the last bucket
+     */
+    public static long getUpperBoundMicros(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Estimate a percentile as the upper bound of the bucket containing it
+     *
+     * @param percentile Value between 0 and 100
+     * @return Upper bound in microseconds, or 0 if there are no samples
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold && seen > 0) {
+                return getUpperBoundMicros(i);
+            }
+        }
+        return getUpperBoundMicros(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Clear all buckets
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    private static int bucketFor(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+    }
+}
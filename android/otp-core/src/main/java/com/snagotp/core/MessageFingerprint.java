@@ -0,0 +1,56 @@
+package com.snagotp.core;
+
+/**
+ * Cheap 64-bit fingerprint of a message body (FNV-1a over its chars)
+ * Used to recognise repeated messages without storing their text
+ */
+public final class MessageFingerprint {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private MessageFingerprint() {
+        // Utility class
+    }
+
+    /**
+     * @param text Message body; works across CompositeCharSequence parts without copying
+     * @return Fingerprint of the text, or 0 for null
+     */
+    public static long of(CharSequence text) {
+        if (text == null) {
+            return 0L;
+        }
+        long hash = OFFSET_BASIS;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            hash ^= c & 0xff;
+            hash *= PRIME;
+            hash ^= c >>> 8;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+
+    /** Fingerprint of nothing, the start of an incremental fingerprint */
+    static final long EMPTY = OFFSET_BASIS;
+
+    /**
+     * Extend an incremental fingerprint by one char, as {@link #of} does
+     */
+    static long add(long hash, char c) {
+        hash ^= c & 0xff;
+        hash *= PRIME;
+        hash ^= c >>> 8;
+        return hash * PRIME;
+    }
+
+    /**
+     * Extend an incremental fingerprint by a number, as four chars
+     */
+    static long add(long hash, long value) {
+        for (int shift = 0; shift < Long.SIZE; shift += Character.SIZE) {
+            hash = add(hash, (char) (value >>> shift));
+        }
+        return hash;
+    }
+}
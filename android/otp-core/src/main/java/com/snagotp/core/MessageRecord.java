@@ -0,0 +1,55 @@
+package com.snagotp.core;
+
+/**
+ * A single message to run OTP extraction on
+ * Carries the originating address and receive time alongside the body, and the row id when it
+ * was read from a message store
+ */
+public final class MessageRecord {
+    /** Id of a message that did not come from a message store */
+    public static final long NO_ID = -1;
+
+    private final long id;
+    private final String sender;
+    private final String body;
+    private final long timestampMillis;
+
+    public MessageRecord(String sender, String body, long timestampMillis) {
+        this(NO_ID, sender, body, timestampMillis);
+    }
+
+    public MessageRecord(long id, String sender, String body, long timestampMillis) {
+        this.id = id;
+        this.sender = sender;
+        this.body = body;
+        this.timestampMillis = timestampMillis;
+    }
+
+    /**
+     * @return Row id in the message store, or {@link #NO_ID}
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return Originating address, or null if unknown
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * @return Message body
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return Time the message was received, in milliseconds since the epoch
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+}
@@ -0,0 +1,237 @@
+package com.snagotp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers the parts of multipart SMS that arrive separately, keyed by sender and concatenation reference
+ * Each new part is checked straight away: once the parts received from the start of the message hold an
+ * OTP that the whole message is certain to yield, that prefix is released without waiting for the rest,
+ * since long bank messages often carry the code in part 1. A message is released at most once, either
+ * early or when complete.
+ *
+ * Incomplete messages expire after a timeout; expired ones that were never released are handed back by
+ * {@link #drainExpired} with whatever parts arrived, as are the oldest ones evicted when the buffer is full.
+ * Callers schedule the drain for {@link #nextExpiryMillis}, so an expired message does not wait for the
+ * next part of some other message.
+ */
+public final class MultipartReassembler {
+    /** Default time an incomplete message is kept */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60 * 1000;
+
+    /** Default number of incomplete messages kept */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final int capacity;
+    private final long timeoutMillis;
+    // Insertion order is arrival order of each message's first part
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private final List<Message> expired = new ArrayList<>();
+
+    public MultipartReassembler() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param capacity Maximum number of incomplete messages kept
+     * @param timeoutMillis Time after the first part at which an incomplete message expires
+     */
+    public MultipartReassembler(int capacity, long timeoutMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("timeoutMillis must be positive: " + timeoutMillis);
+        }
+        this.capacity = capacity;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * A released message, complete or not
+     */
+    public static final class Message {
+        private final String sender;
+        private final CharSequence text;
+        private final long timestampMillis;
+        private final boolean complete;
+
+        Message(String sender, CharSequence text, long timestampMillis, boolean complete) {
+            this.sender = sender;
+            this.text = text;
+            this.timestampMillis = timestampMillis;
+            this.complete = complete;
+        }
+
+        /**
+         * @return Originating address, or null if unknown
+         */
+        public String getSender() {
+            return sender;
+        }
+
+        /**
+         * @return Parts received so far, in order
+         */
+        public CharSequence getText() {
+            return text;
+        }
+
+        /**
+         * @return Receive time of the first part that arrived
+         */
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        /**
+         * @return true if every part had arrived
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /**
+     * Add one part
+     *
+     * @param sender Originating address, may be null
+     * @param header Concatenation header of the part
+     * @param text Body of the part
+     * @param timestampMillis Receive time of the part
+     * @param nowMillis Current time from a monotonic clock
+     * @return The message to process now (an early prefix or the completed message), or null to wait
+     */
+    public synchronized Message add(String sender, ConcatenatedSmsHeader header, String text,
+            long timestampMillis, long nowMillis) {
+        String key = sender + '\u0000' + header.getReference() + '/' + header.getPartCount();
+        Pending message = pending.get(key);
+        if (message == null) {
+            message = new Pending(sender, header.getPartCount(), timestampMillis, nowMillis);
+            pending.put(key, message);
+            if (pending.size() > capacity) {
+                Iterator<Pending> oldest = pending.values().iterator();
+                expire(oldest.next());
+                oldest.remove();
+            }
+        }
+        int index = header.getPartNumber() - 1;
+        if (message.parts[index] != null) {
+            // Repeated part
+            return null;
+        }
+        message.parts[index] = text != null ? text : "";
+        message.received++;
+
+        if (message.received == message.parts.length) {
+            pending.remove(key);
+            return message.released ? null : message.release(true);
+        }
+        if (message.released) {
+            return null;
+        }
+        int prefixParts = 0;
+        while (prefixParts < message.parts.length && message.parts[prefixParts] != null) {
+            prefixParts++;
+        }
+        if (prefixParts <= message.checkedPrefix) {
+            return null;
+        }
+        message.checkedPrefix = prefixParts;
+        CharSequence prefix = CompositeCharSequence.of(Arrays.copyOf(message.parts, prefixParts));
+        if (!isFinal(OtpExtractor.scan(prefix), prefix)) {
+            return null;
+        }
+        message.released = true;
+        return new Message(sender, prefix, message.timestampMillis, false);
+    }
+
+    /**
+     * Remove messages whose timeout has passed
+     *
+     * @param nowMillis Current time from a monotonic clock
+     * @return Expired or evicted messages that were never released, oldest first; usually empty
+     */
+    public synchronized List<Message> drainExpired(long nowMillis) {
+        Iterator<Pending> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            Pending message = iterator.next();
+            if (nowMillis - message.firstSeenMillis < timeoutMillis) {
+                // Later entries arrived later
+                break;
+            }
+            expire(message);
+            iterator.remove();
+        }
+        if (expired.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Message> drained = new ArrayList<>(expired);
+        expired.clear();
+        return drained;
+    }
+
+    /**
+     * @return Time at which the oldest incomplete message expires, on the clock passed to {@link #add},
+     *         or {@link Long#MAX_VALUE} if none is buffered
+     */
+    public synchronized long nextExpiryMillis() {
+        if (pending.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        return pending.values().iterator().next().firstSeenMillis + timeoutMillis;
+    }
+
+    /**
+     * @return Number of incomplete messages buffered
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * A match in the first parts is final when the whole message must give the same one: a keyword-anchored
+     * code (the highest-priority format, taken leftmost) with at least one character after it, so the
+     * next part cannot extend it, and no user rules that could outrank it
+     */
+    static boolean isFinal(OtpMatch match, CharSequence prefix) {
+        return match != null
+                && match.getPatternIndex() == OtpScanner.PATTERN_KEYWORD_NUMERIC
+                && match.getEnd() < prefix.length()
+                && OtpExtractor.getCustomRules().isEmpty();
+    }
+
+    private void expire(Pending message) {
+        if (!message.released) {
+            expired.add(message.release(false));
+        }
+    }
+
+    private static final class Pending {
+        final String sender;
+        final String[] parts;
+        final long timestampMillis;
+        final long firstSeenMillis;
+        int received;
+        // Number of leading parts already checked for an early OTP
+        int checkedPrefix;
+        boolean released;
+
+        Pending(String sender, int partCount, long timestampMillis, long firstSeenMillis) {
+            this.sender = sender;
+            this.parts = new String[partCount];
+            this.timestampMillis = timestampMillis;
+            this.firstSeenMillis = firstSeenMillis;
+        }
+
+        Message release(boolean complete) {
+            released = true;
+            return new Message(sender, CompositeCharSequence.of(parts), timestampMillis, complete);
+        }
+    }
+}
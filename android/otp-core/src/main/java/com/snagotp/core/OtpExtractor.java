@@ -0,0 +1,201 @@
+package com.snagotp.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Utility class for extracting OTP (One-Time Password) from SMS message text
+ * Matches various OTP formats in a single pass using {@link OtpScanner}, or a compiled
+ * {@link OtpRuleMatcher} once user-defined rules are set
+ * Every message first goes through an {@link OtpPrefilter}, so messages without an OTP are rejected cheaply
+ * Plain Java with no Android dependencies, so it can be benchmarked and tested on the JVM
+ * Contributors: Add support for additional OTP formats in OtpScanner and OtpRule.builtIns()
+ */
+public class OtpExtractor {
+
+    // Built-in rules plus user rules, or null when there are no user rules and OtpScanner is used
+    private static volatile OtpRuleMatcher customMatcher;
+    private static List<OtpRule> customRules = Collections.emptyList();
+    // Bumped on every rule change, so results remembered under earlier rules can be told apart
+    private static volatile int rulesGeneration;
+    // Rejects messages no active rule can match; rebuilt with the matcher
+    // The built-in one is normally read from the build-time image, see PrecompiledMatchers
+    private static volatile OtpPrefilter prefilter = PrecompiledMatchers.prefilter(OtpRule.builtIns());
+
+    /**
+     * Replace the user-defined rules
+     * They are compiled together with the built-in rules into one matcher; nothing is recompiled
+     * if the rules are unchanged
+     * Any change also invalidates every {@link SenderTemplateCache}
+     *
+     * @param rules User rules, or null/empty for the built-in formats only
+     */
+    public static synchronized void setCustomRules(List<OtpRule> rules) {
+        List<OtpRule> copy = rules == null ? Collections.<OtpRule>emptyList() : new ArrayList<>(rules);
+        if (copy.equals(customRules)) {
+            return;
+        }
+        List<OtpRule> all = new ArrayList<>(OtpRule.builtIns());
+        all.addAll(copy);
+        prefilter = PrecompiledMatchers.prefilter(all);
+        customMatcher = copy.isEmpty() ? null : OtpRuleMatcher.compile(all);
+        customRules = Collections.unmodifiableList(copy);
+        rulesGeneration++;
+    }
+
+    /**
+     * @return The user-defined rules currently in effect
+     */
+    public static synchronized List<OtpRule> getCustomRules() {
+        return customRules;
+    }
+
+    /**
+     * @return Number of times the rules have changed; templates learned under another value are stale
+     */
+    static int getRulesGeneration() {
+        return rulesGeneration;
+    }
+
+    /**
+     * Extract OTP from the given message text
+     * Scans the message once and returns the highest-priority match
+     * Accepts any CharSequence, including a {@link CompositeCharSequence} over multipart bodies
+     *
+     * @param messageText The SMS message body to extract OTP from
+     * @return The extracted OTP string, or null if no OTP found
+     */
+    public static String extractOtp(CharSequence messageText) {
+        OtpMatch match = findOtp(messageText);
+        return match != null ? match.getCode() : null;
+    }
+
+    /**
+     * Find the OTP in the given message text along with the pattern that matched
+     *
+     * @param messageText The SMS message body to extract OTP from
+     * @return The match, or null if no OTP found
+     */
+    public static OtpMatch findOtp(CharSequence messageText) {
+        return prefilter(messageText) ? findAcceptedOtp(messageText) : null;
+    }
+
+    /**
+     * The counted first step of {@link #findOtp}, for callers with work of their own before the match
+     * A rejection is recorded in {@link ExtractionMetrics} just as inside findOtp
+     *
+     * @param messageText The message body
+     * @return false if the message certainly contains no OTP; otherwise pass it to {@link #findAcceptedOtp}
+     */
+    public static boolean prefilter(CharSequence messageText) {
+        if (messageText == null || isBlank(messageText)) {
+            return false;
+        }
+        long startNanos = System.nanoTime();
+        if (!prefilter.accepts(messageText)) {
+            ExtractionMetrics.getInstance().recordPrefilterRejection(System.nanoTime() - startNanos);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Find the OTP in a message {@link #prefilter} has accepted, without prefiltering it again
+     *
+     * @param messageText The message body
+     * @return The match, or null if no OTP found
+     */
+    public static OtpMatch findAcceptedOtp(CharSequence messageText) {
+        long startNanos = System.nanoTime();
+        OtpMatch match = match(messageText);
+        ExtractionMetrics.getInstance().recordExtraction(
+                match != null ? match.getPatternIndex() : 0, System.nanoTime() - startNanos);
+        return match;
+    }
+
+    /**
+     * Validate if the extracted string is a valid OTP
+     * Can be extended with additional validation logic
+     *
+     * @param otp The OTP string to validate
+     * @return true if valid, false otherwise
+     */
+    public static boolean isValidOtp(String otp) {
+        if (otp == null || otp.isEmpty()) {
+            return false;
+        }
+
+        // Basic validation: OTP should be 4-8 characters
+        int length = otp.length();
+        if (length < 4 || length > 8) {
+            return false;
+        }
+
+        // OTP should contain at least one digit
+        return containsDigit(otp);
+    }
+
+    /**
+     * Extract OTP with validation
+     * Combines extraction and validation in one method
+     *
+     * @param messageText The SMS message body
+     * @return Validated OTP string, or null if invalid
+     */
+    public static String extractAndValidateOtp(CharSequence messageText) {
+        String otp = extractOtp(messageText);
+
+        if (otp != null && isValidOtp(otp)) {
+            return otp;
+        }
+
+        if (otp != null) {
+            ExtractionMetrics.getInstance().recordValidationRejection();
+        }
+        return null;
+    }
+
+    /**
+     * Cheap check that runs before extraction
+     * Makes one pass over the message; false means no active rule can match, so callers can skip
+     * any further work, logging included
+     *
+     * @param messageText The message body
+     * @return false if the message certainly contains no OTP
+     */
+    public static boolean mayContainOtp(CharSequence messageText) {
+        return messageText != null && prefilter.accepts(messageText);
+    }
+
+    /**
+     * Prefilter and run the active matcher without recording metrics
+     */
+    static OtpMatch scan(CharSequence messageText) {
+        return mayContainOtp(messageText) ? match(messageText) : null;
+    }
+
+    private static OtpMatch match(CharSequence messageText) {
+        OtpRuleMatcher matcher = customMatcher;
+        return matcher != null ? matcher.match(messageText) : OtpScanner.scan(messageText);
+    }
+
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsDigit(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,272 @@
+package com.snagotp.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed-capacity in-memory store of recent OTP records, kept in primitive columns
+ * Each row is a timestamp, a packed code, a pattern number, a sender handle and a message fingerprint,
+ * about 25 bytes in total instead of a record object with its own strings. Numeric codes of up to
+ * {@link #MAX_PACKED_DIGITS} digits are packed into an int together with their length, so leading
+ * zeros survive; other codes go to a side column. Senders are interned once and referenced by handle.
+ * Handles are counted per row and released when the last row of a sender is overwritten, so the
+ * sender table is bounded by the capacity rather than growing with every sender ever seen; a released
+ * handle is reused by the next new sender.
+ *
+ * Rows are addressed by sequence number, which increases with every {@link #append}. When the ring is
+ * full the oldest row is overwritten; callers that need the full history write it to persistent storage
+ * before appending here, so an evicted row is only dropped from memory.
+ */
+public final class OtpHistoryRing {
+    /** Longest numeric code packed into the code column */
+    public static final int MAX_PACKED_DIGITS = 8;
+
+    /** Sender handle of rows without an originating address */
+    public static final int NO_SENDER = -1;
+
+    // Packed code: length in bits 27-30, value in bits 0-26 (10^8 - 1 < 2^27)
+    private static final int LENGTH_SHIFT = 27;
+    private static final int VALUE_MASK = (1 << LENGTH_SHIFT) - 1;
+    // Marks a code kept in the side column
+    private static final int UNPACKED = -1;
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final long[] messageHashes;
+    private final int[] codes;
+    private final int[] senders;
+    private final byte[] patterns;
+    // Allocated on the first code that cannot be packed
+    private String[] unpackedCodes;
+
+    private final Map<String, Integer> senderHandles = new HashMap<>();
+    private String[] senderNames = new String[16];
+    // Rows referencing each handle; a handle with no rows is on the free list
+    private int[] senderRows = new int[16];
+    private int[] freeHandles = new int[16];
+    private int freeCount;
+    // Handles in use or free are below this
+    private int handleLimit;
+
+    private int endSequence;
+
+    /**
+     * @param capacity Number of rows kept in memory
+     */
+    public OtpHistoryRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.messageHashes = new long[capacity];
+        this.codes = new int[capacity];
+        this.senders = new int[capacity];
+        this.patterns = new byte[capacity];
+    }
+
+    /**
+     * Add a row, overwriting the oldest one if the ring is full
+     *
+     * @param code Extracted OTP
+     * @param sender Originating address, or null
+     * @param timestampMillis Time the message was received
+     * @param patternIndex Pattern number that produced the code, 0-127
+     * @param messageHash Fingerprint of the message body
+     * @return Sequence number of the new row
+     */
+    public synchronized int append(String code, String sender, long timestampMillis, int patternIndex,
+            long messageHash) {
+        if (code == null || code.isEmpty()) {
+            throw new IllegalArgumentException("code is required");
+        }
+        if (patternIndex < 0 || patternIndex > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("patternIndex out of range: " + patternIndex);
+        }
+        int sequence = endSequence;
+        int slot = sequence % capacity;
+
+        // Interned before the old row is released, so a sender that only had that row keeps its handle
+        int handle = intern(sender);
+        if (sequence >= capacity) {
+            release(senders[slot]);
+        }
+        timestamps[slot] = timestampMillis;
+        messageHashes[slot] = messageHash;
+        patterns[slot] = (byte) patternIndex;
+        senders[slot] = handle;
+        int packed = pack(code);
+        codes[slot] = packed;
+        if (packed == UNPACKED) {
+            if (unpackedCodes == null) {
+                unpackedCodes = new String[capacity];
+            }
+            unpackedCodes[slot] = code;
+        } else if (unpackedCodes != null) {
+            unpackedCodes[slot] = null;
+        }
+
+        endSequence = sequence + 1;
+        return sequence;
+    }
+
+    /**
+     * @return Sequence number of the oldest row still in memory
+     */
+    public synchronized int getFirstSequence() {
+        return Math.max(0, endSequence - capacity);
+    }
+
+    /**
+     * @return Sequence number the next row will get
+     */
+    public synchronized int getEndSequence() {
+        return endSequence;
+    }
+
+    /**
+     * @return true if the row has not been overwritten yet
+     */
+    public synchronized boolean contains(int sequence) {
+        return sequence >= getFirstSequence() && sequence < endSequence;
+    }
+
+    /**
+     * @return Number of rows in memory
+     */
+    public synchronized int size() {
+        return Math.min(endSequence, capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getTimestampMillis(int sequence) {
+        return timestamps[slot(sequence)];
+    }
+
+    public synchronized long getMessageHash(int sequence) {
+        return messageHashes[slot(sequence)];
+    }
+
+    public synchronized int getPatternIndex(int sequence) {
+        return patterns[slot(sequence)];
+    }
+
+    /**
+     * @return Interned sender handle, or {@link #NO_SENDER}
+     */
+    public synchronized int getSenderHandle(int sequence) {
+        return senders[slot(sequence)];
+    }
+
+    /**
+     * @return Originating address of the row, the same instance for every row of that sender
+     */
+    public synchronized String getSender(int sequence) {
+        return getSenderName(senders[slot(sequence)]);
+    }
+
+    /**
+     * @param handle Handle from {@link #getSenderHandle} of a row still in memory
+     * @return Sender for the handle, or null for {@link #NO_SENDER}
+     */
+    public synchronized String getSenderName(int handle) {
+        if (handle == NO_SENDER) {
+            return null;
+        }
+        if (handle < 0 || handle >= handleLimit || senderNames[handle] == null) {
+            throw new IllegalArgumentException("Unknown sender handle: " + handle);
+        }
+        return senderNames[handle];
+    }
+
+    /**
+     * @return Number of distinct senders of the rows in memory
+     */
+    public synchronized int getSenderCount() {
+        return senderHandles.size();
+    }
+
+    /**
+     * Decode the code of a row; allocates, so meant for the rows actually displayed
+     *
+     * @return The extracted OTP
+     */
+    public synchronized String getCode(int sequence) {
+        int slot = slot(sequence);
+        int packed = codes[slot];
+        if (packed == UNPACKED) {
+            return unpackedCodes[slot];
+        }
+        int length = packed >>> LENGTH_SHIFT;
+        char[] digits = new char[length];
+        int value = packed & VALUE_MASK;
+        for (int i = length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+
+    private int slot(int sequence) {
+        if (sequence < getFirstSequence() || sequence >= endSequence) {
+            throw new IndexOutOfBoundsException("Sequence " + sequence + " not in ["
+                    + getFirstSequence() + ", " + endSequence + ")");
+        }
+        return sequence % capacity;
+    }
+
+    private int intern(String sender) {
+        if (sender == null) {
+            return NO_SENDER;
+        }
+        Integer existing = senderHandles.get(sender);
+        if (existing != null) {
+            senderRows[existing]++;
+            return existing;
+        }
+        int handle;
+        if (freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        } else {
+            if (handleLimit == senderNames.length) {
+                senderNames = Arrays.copyOf(senderNames, handleLimit * 2);
+                senderRows = Arrays.copyOf(senderRows, handleLimit * 2);
+                freeHandles = Arrays.copyOf(freeHandles, handleLimit * 2);
+            }
+            handle = handleLimit++;
+        }
+        senderNames[handle] = sender;
+        senderRows[handle] = 1;
+        senderHandles.put(sender, handle);
+        return handle;
+    }
+
+    private void release(int handle) {
+        if (handle == NO_SENDER || --senderRows[handle] > 0) {
+            return;
+        }
+        senderHandles.remove(senderNames[handle]);
+        senderNames[handle] = null;
+        freeHandles[freeCount++] = handle;
+    }
+
+    private static int pack(String code) {
+        int length = code.length();
+        if (length > MAX_PACKED_DIGITS) {
+            return UNPACKED;
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return UNPACKED;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return (length << LENGTH_SHIFT) | value;
+    }
+}
@@ -0,0 +1,53 @@
+package com.snagotp.core;
+
+/**
+ * Result of a single OTP scan over a message
+ * Holds the extracted code together with the pattern that produced it
+ * and the span of the message it was taken from
+ */
+public final class OtpMatch {
+    private final String code;
+    private final int patternIndex;
+    private final int start;
+    private final int end;
+
+    OtpMatch(String code, int patternIndex, int start, int end) {
+        this.code = code;
+        this.patternIndex = patternIndex;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return The extracted OTP, with any separators removed
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @return The 1-based pattern number that matched (see {@link OtpScanner})
+     */
+    public int getPatternIndex() {
+        return patternIndex;
+    }
+
+    /**
+     * @return Offset of the first character of the code in the message
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return Offset just past the last character of the code in the message
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return "OtpMatch{pattern=" + patternIndex + ", start=" + start + ", end=" + end + "}";
+    }
+}
@@ -0,0 +1,175 @@
+package com.snagotp.core;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cheap first stage that rejects messages which cannot contain an OTP
+ * Makes one pass over the message and only tracks run lengths and keyword hits, so promos,
+ * delivery updates and chat are turned away before the matcher runs
+ *
+ * A message is accepted if any of these holds, each derived from the rule set:
+ *   - a digit run as long as the shortest ungrouped digit code
+ *   - a digit group followed by a separator and another digit, for grouped rules
+ *   - a digit run as long as one group, for grouped rules whose codes may be a single group
+ *   - a keyword of a rule whose codes may contain letters
+ *   - an alphanumeric run as long as the shortest unanchored alphanumeric code
+ * These are necessary conditions for every rule, so an accepted message may still have no OTP
+ * but a rejected one never has
+ * Digits are those of {@link DigitFolding}, as in the matchers
+ */
+public final class OtpPrefilter {
+    private final int minDigitRun;
+    private final int minAlphanumericRun;
+    // Bit n set if some grouped digit rule has groups of n digits
+    private final long groupSizes;
+    private final String groupSeparators;
+    // Keywords of alphanumeric keyword rules, or null if there are none
+    private final KeywordIndex keywordIndex;
+
+    private OtpPrefilter(int minDigitRun, int minAlphanumericRun, long groupSizes, String groupSeparators,
+                         KeywordIndex keywordIndex) {
+        this.minDigitRun = minDigitRun;
+        this.minAlphanumericRun = minAlphanumericRun;
+        this.groupSizes = groupSizes;
+        this.groupSeparators = groupSeparators;
+        this.keywordIndex = keywordIndex;
+    }
+
+    /**
+     * Build the prefilter for a rule set
+     *
+     * @param rules Rules the matcher behind this prefilter uses
+     * @return The prefilter
+     */
+    public static OtpPrefilter compile(List<OtpRule> rules) {
+        int minDigitRun = Integer.MAX_VALUE;
+        int minAlphanumericRun = Integer.MAX_VALUE;
+        long groupSizes = 0;
+        StringBuilder separators = new StringBuilder();
+        List<String> keywords = new ArrayList<>();
+
+        for (OtpRule rule : rules) {
+            boolean alphanumeric = rule.getCharset() == OtpRule.Charset.ALPHANUMERIC;
+            int shortestRun = rule.getGroupSize() > 0 ? rule.getGroupSize() : rule.getMinLength();
+            if (alphanumeric && rule.getAnchor() == OtpRule.Anchor.KEYWORD) {
+                keywords.addAll(rule.getKeywords());
+            } else if (alphanumeric) {
+                minAlphanumericRun = Math.min(minAlphanumericRun, shortestRun);
+            } else if (rule.getGroupSize() > 0 && rule.getGroupSize() < Long.SIZE) {
+                groupSizes |= 1L << rule.getGroupSize();
+                if (rule.getMinLength() <= rule.getGroupSize()) {
+                    // A lone group is already a whole code
+                    minDigitRun = Math.min(minDigitRun, rule.getGroupSize());
+                }
+                for (int k = 0; k < rule.getSeparators().length(); k++) {
+                    char c = rule.getSeparators().charAt(k);
+                    if (separators.indexOf(String.valueOf(c)) < 0) {
+                        separators.append(c);
+                    }
+                }
+            } else {
+                minDigitRun = Math.min(minDigitRun, shortestRun);
+            }
+        }
+
+        KeywordIndex keywordIndex = null;
+        if (!keywords.isEmpty()) {
+            long[] masks = new long[keywords.size()];
+            Arrays.fill(masks, 1L);
+            keywordIndex = KeywordIndex.compile(keywords, masks);
+        }
+        return new OtpPrefilter(minDigitRun, minAlphanumericRun, groupSizes, separators.toString(), keywordIndex);
+    }
+
+    /**
+     * Write the compiled prefilter, for {@link #readFrom}
+     *
+     * @param out Destination
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(minDigitRun);
+        out.writeInt(minAlphanumericRun);
+        out.writeLong(groupSizes);
+        out.writeInt(groupSeparators.length());
+        out.writeChars(groupSeparators);
+        out.writeBoolean(keywordIndex != null);
+        if (keywordIndex != null) {
+            keywordIndex.writeTo(out);
+        }
+    }
+
+    /**
+     * Read a prefilter written by {@link #writeTo}, without recompiling
+     *
+     * @param in Source, positioned at the prefilter; advanced past it
+     * @return The prefilter
+     * @throws IOException if the data is malformed
+     */
+    static OtpPrefilter readFrom(ByteBuffer in) throws IOException {
+        int minDigitRun = in.getInt();
+        int minAlphanumericRun = in.getInt();
+        long groupSizes = in.getLong();
+        int separatorCount = in.getInt();
+        if (separatorCount < 0 || separatorCount > in.remaining() / Character.BYTES) {
+            throw new IOException("Bad prefilter separator count " + separatorCount);
+        }
+        char[] separators = new char[separatorCount];
+        for (int k = 0; k < separatorCount; k++) {
+            separators[k] = in.getChar();
+        }
+        KeywordIndex keywordIndex = in.get() != 0 ? KeywordIndex.readFrom(in) : null;
+        return new OtpPrefilter(minDigitRun, minAlphanumericRun, groupSizes, new String(separators), keywordIndex);
+    }
+
+    /**
+     * @param text The message body
+     * @return false if no rule can match the message, true if it must be scanned
+     */
+    public boolean accepts(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        final int length = text.length();
+        int digitRun = 0;
+        int alphanumericRun = 0;
+        // Set right after "<group><separator>"; a digit here completes a grouped candidate
+        boolean groupPending = false;
+        int keywordState = KeywordIndex.ROOT;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (DigitFolding.isDigit(c)) {
+                if (groupPending || ++digitRun >= minDigitRun) {
+                    return true;
+                }
+                if (++alphanumericRun >= minAlphanumericRun) {
+                    return true;
+                }
+            } else {
+                groupPending = digitRun > 0 && digitRun < Long.SIZE && (groupSizes & (1L << digitRun)) != 0
+                        && groupSeparators.indexOf(c) >= 0;
+                digitRun = 0;
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                    if (++alphanumericRun >= minAlphanumericRun) {
+                        return true;
+                    }
+                } else {
+                    alphanumericRun = 0;
+                }
+            }
+            if (keywordIndex != null) {
+                keywordState = keywordIndex.step(keywordState, c);
+                if (keywordIndex.getMask(keywordState) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,189 @@
+package com.snagotp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Declarative description of one OTP format
+ * Rules are compiled together into a single {@link OtpRuleMatcher}, so adding a rule does not add a scan
+ *
+ * Anchors:
+ *   KEYWORD - a keyword, then any non-code characters, then a run of code characters; the run must
+ *             reach minLength and is cut at maxLength
+ *   WORD    - a whole word of code characters whose length is within [minLength, maxLength]
+ *   START   - a run of code characters at the very start of the message, cut at maxLength
+ * With groupSize > 0 the code is made of groups of exactly groupSize characters joined by single
+ * separator characters (e.g. "123-456"); the separators are removed from the result
+ */
+public final class OtpRule {
+
+    /** Characters a code may contain */
+    public enum Charset {
+        DIGITS,
+        ALPHANUMERIC
+    }
+
+    /** What the code is anchored to */
+    public enum Anchor {
+        KEYWORD,
+        WORD,
+        START
+    }
+
+    private final String name;
+    private final int priority;
+    private final Anchor anchor;
+    private final List<String> keywords;
+    private final Charset charset;
+    private final int minLength;
+    private final int maxLength;
+    private final int groupSize;
+    private final String separators;
+
+    /**
+     * @param name Display name
+     * @param priority Lower values win when several rules match
+     * @param anchor What the code is anchored to
+     * @param keywords Keywords for KEYWORD rules, matched ignoring case; ignored for other anchors
+     * @param charset Characters a code may contain
+     * @param minLength Minimum code length, excluding separators
+     * @param maxLength Maximum code length, excluding separators
+     * @param groupSize Size of each separated group, or 0 for an unseparated code
+     * @param separators Characters allowed between groups
+     */
+    public OtpRule(String name, int priority, Anchor anchor, List<String> keywords, Charset charset,
+                   int minLength, int maxLength, int groupSize, String separators) {
+        if (anchor == null || charset == null) {
+            throw new IllegalArgumentException("anchor and charset are required");
+        }
+        if (minLength < 1 || maxLength < minLength) {
+            throw new IllegalArgumentException("Invalid length range " + minLength + "-" + maxLength);
+        }
+        if (groupSize < 0 || (groupSize > 0 && (separators == null || separators.isEmpty()))) {
+            throw new IllegalArgumentException("Grouped rules need a positive group size and separators");
+        }
+        if (groupSize > 0 && anchor == Anchor.START) {
+            throw new IllegalArgumentException("START rules cannot be grouped");
+        }
+
+        List<String> normalized = new ArrayList<>();
+        if (keywords != null) {
+            for (String keyword : keywords) {
+                if (keyword != null && !keyword.isEmpty()) {
+                    normalized.add(keyword.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        if (anchor == Anchor.KEYWORD && normalized.isEmpty()) {
+            throw new IllegalArgumentException("KEYWORD rules need at least one keyword");
+        }
+
+        this.name = name;
+        this.priority = priority;
+        this.anchor = anchor;
+        this.keywords = Collections.unmodifiableList(normalized);
+        this.charset = charset;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.groupSize = groupSize;
+        this.separators = groupSize > 0 ? separators : "";
+    }
+
+    /**
+     * The built-in formats, in pattern-number order (see {@link OtpScanner})
+     * Compiled on their own they give the same results as OtpScanner
+     *
+     * @return Built-in rules
+     */
+    public static List<OtpRule> builtIns() {
+        List<String> numericKeywords = OtpScanner.numericKeywords();
+        List<String> alphanumericKeywords = OtpScanner.alphanumericKeywords();
+        List<String> none = Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(
+                new OtpRule("Keyword + digits", 10, Anchor.KEYWORD, numericKeywords, Charset.DIGITS, 4, 8, 0, null),
+                new OtpRule("Standalone digits", 20, Anchor.WORD, none, Charset.DIGITS, 4, 8, 0, null),
+                new OtpRule("Keyword + alphanumeric", 30, Anchor.KEYWORD, alphanumericKeywords, Charset.ALPHANUMERIC, 4, 8, 0, null),
+                new OtpRule("Split digits", 40, Anchor.WORD, none, Charset.DIGITS, 6, 6, 3, " -\t\n\u000B\f\r"),
+                new OtpRule("Leading digits", 50, Anchor.START, none, Charset.DIGITS, 6, 6, 0, null)
+        ));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public Anchor getAnchor() {
+        return anchor;
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public int getMinLength() {
+        return minLength;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public int getGroupSize() {
+        return groupSize;
+    }
+
+    public String getSeparators() {
+        return separators;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OtpRule)) {
+            return false;
+        }
+        OtpRule other = (OtpRule) o;
+        return priority == other.priority
+                && minLength == other.minLength
+                && maxLength == other.maxLength
+                && groupSize == other.groupSize
+                && anchor == other.anchor
+                && charset == other.charset
+                && (name == null ? other.name == null : name.equals(other.name))
+                && keywords.equals(other.keywords)
+                && separators.equals(other.separators);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name != null ? name.hashCode() : 0;
+        result = 31 * result + priority;
+        result = 31 * result + anchor.hashCode();
+        result = 31 * result + keywords.hashCode();
+        result = 31 * result + charset.hashCode();
+        result = 31 * result + minLength;
+        result = 31 * result + maxLength;
+        result = 31 * result + groupSize;
+        result = 31 * result + separators.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "OtpRule{" + name + ", priority=" + priority + ", " + anchor + ", " + charset
+                + " " + minLength + "-" + maxLength + "}";
+    }
+}
@@ -0,0 +1,356 @@
+package com.snagotp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A set of {@link OtpRule}s compiled into one single-pass matcher
+ * All keywords share one {@link KeywordIndex} and all rules share the digit and alphanumeric run tracking,
+ * so the message is walked once no matter how many rules there are; rules are only consulted
+ * at the end of a run of their charset
+ * Digits include the native digits of {@link DigitFolding}; codes are returned in ASCII
+ * Immutable and safe for concurrent use; compile once and reuse until the rules change
+ */
+public final class OtpRuleMatcher {
+    /** Maximum number of rules in one matcher */
+    public static final int MAX_RULES = 64;
+
+    private static final int ANCHOR_KEYWORD = 0;
+    private static final int ANCHOR_WORD = 1;
+    private static final int ANCHOR_START = 2;
+
+    // Per-rule tables, indexed by rank (position after sorting by priority)
+    private final int ruleCount;
+    private final int[] patternIndex;
+    private final int[] anchor;
+    private final boolean[] alphanumeric;
+    private final int[] minLength;
+    private final int[] maxLength;
+    private final int[] groupSize;
+    private final String[] separators;
+
+    // Ranks of the rules evaluated at the end of a digit run and of an alphanumeric run
+    private final long digitRules;
+    private final long alphanumericRules;
+
+    private final KeywordIndex keywordIndex;
+
+    private OtpRuleMatcher(List<OtpRule> sorted, int[] patternIndex) {
+        this.ruleCount = sorted.size();
+        this.patternIndex = patternIndex;
+        this.anchor = new int[ruleCount];
+        this.alphanumeric = new boolean[ruleCount];
+        this.minLength = new int[ruleCount];
+        this.maxLength = new int[ruleCount];
+        this.groupSize = new int[ruleCount];
+        this.separators = new String[ruleCount];
+
+        List<String> keywords = new ArrayList<>();
+        List<Long> keywordRanks = new ArrayList<>();
+        long digits = 0;
+        long alphanumerics = 0;
+        for (int rank = 0; rank < ruleCount; rank++) {
+            OtpRule rule = sorted.get(rank);
+            anchor[rank] = rule.getAnchor() == OtpRule.Anchor.KEYWORD ? ANCHOR_KEYWORD
+                    : rule.getAnchor() == OtpRule.Anchor.WORD ? ANCHOR_WORD : ANCHOR_START;
+            alphanumeric[rank] = rule.getCharset() == OtpRule.Charset.ALPHANUMERIC;
+            minLength[rank] = rule.getMinLength();
+            maxLength[rank] = rule.getMaxLength();
+            groupSize[rank] = rule.getGroupSize();
+            separators[rank] = rule.getSeparators();
+
+            if (alphanumeric[rank]) {
+                alphanumerics |= 1L << rank;
+            } else {
+                digits |= 1L << rank;
+            }
+            if (anchor[rank] == ANCHOR_KEYWORD) {
+                for (String keyword : rule.getKeywords()) {
+                    keywords.add(keyword);
+                    keywordRanks.add(1L << rank);
+                }
+            }
+        }
+        long[] masks = new long[keywordRanks.size()];
+        for (int k = 0; k < masks.length; k++) {
+            masks[k] = keywordRanks.get(k);
+        }
+        this.keywordIndex = KeywordIndex.compile(keywords, masks);
+        this.digitRules = digits;
+        this.alphanumericRules = alphanumerics;
+    }
+
+    /**
+     * Compile rules into a matcher
+     * A rule's pattern number is its 1-based position in the list, so passing
+     * {@link OtpRule#builtIns()} first keeps the built-in numbering
+     *
+     * @param rules Rules to compile
+     * @return The compiled matcher
+     */
+    public static OtpRuleMatcher compile(List<OtpRule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            throw new IllegalArgumentException("At least one rule is required");
+        }
+        if (rules.size() > MAX_RULES) {
+            throw new IllegalArgumentException("At most " + MAX_RULES + " rules are supported: " + rules.size());
+        }
+
+        final List<OtpRule> input = new ArrayList<>(rules);
+        Integer[] order = new Integer[input.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Stable sort keeps list order between rules of equal priority
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int pa = input.get(a).getPriority();
+                int pb = input.get(b).getPriority();
+                return pa < pb ? -1 : (pa == pb ? 0 : 1);
+            }
+        });
+
+        List<OtpRule> sorted = new ArrayList<>(order.length);
+        int[] patternIndex = new int[order.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            sorted.add(input.get(order[rank]));
+            patternIndex[rank] = order[rank] + 1;
+        }
+        return new OtpRuleMatcher(sorted, patternIndex);
+    }
+
+    /**
+     * Find the OTP in a message
+     *
+     * @param text The message body
+     * @return The match from the highest-priority rule, or null if no rule matched
+     */
+    public OtpMatch match(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+
+        ScanState state = new ScanState(ruleCount);
+        final int length = text.length();
+        int digitRunStart = -1;
+        int alphanumericRunStart = -1;
+        int keywordState = KeywordIndex.ROOT;
+
+        // One extra iteration at i == length closes any open run
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : '\0';
+            boolean digit = DigitFolding.isDigit(c);
+            boolean alnum = digit || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+
+            if (digitRunStart >= 0 && !digit) {
+                onRunEnd(text, state, digitRules, digitRunStart, i);
+                digitRunStart = -1;
+            } else if (digit && digitRunStart < 0) {
+                digitRunStart = i;
+            }
+            if (alphanumericRunStart >= 0 && !alnum) {
+                onRunEnd(text, state, alphanumericRules, alphanumericRunStart, i);
+                alphanumericRunStart = -1;
+            } else if (alnum && alphanumericRunStart < 0) {
+                alphanumericRunStart = i;
+            }
+
+            if (state.best == 0) {
+                break;
+            }
+            if (i < length) {
+                keywordState = keywordIndex.step(keywordState, c);
+                long keywordRules = keywordIndex.getMask(keywordState);
+                if (keywordRules != 0) {
+                    armKeywordRules(state, keywordRules, i + 1);
+                }
+            }
+        }
+
+        return state.best < ruleCount ? buildMatch(text, state.best, state) : null;
+    }
+
+    /**
+     * Arm the keyword rules whose keyword ends at the given offset
+     */
+    private static void armKeywordRules(ScanState state, long rules, int end) {
+        long mask = rules;
+        while (mask != 0) {
+            int rank = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            if (rank < state.best && state.foundStart[rank] < 0) {
+                if (state.from[rank] < 0) {
+                    state.from[rank] = end;
+                }
+                state.lastKeywordEnd[rank] = end;
+            }
+        }
+    }
+
+    /**
+     * Evaluate the rules of one charset against a completed run [runStart, runEnd)
+     */
+    private void onRunEnd(CharSequence text, ScanState state, long rules, int runStart, int runEnd) {
+        long mask = rules;
+        while (mask != 0) {
+            int rank = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            if (rank >= state.best) {
+                return;
+            }
+            if (state.foundStart[rank] >= 0) {
+                continue;
+            }
+
+            int start = -1;
+            int end = -1;
+            switch (anchor[rank]) {
+                case ANCHOR_KEYWORD: {
+                    int from = state.from[rank];
+                    if (from < 0 || from >= runEnd) {
+                        continue;
+                    }
+                    start = Math.max(runStart, from);
+                    int runLength = runEnd - start;
+                    if (groupSize[rank] == 0) {
+                        if (runLength >= minLength[rank]) {
+                            end = start + Math.min(runLength, maxLength[rank]);
+                        }
+                    } else if (runLength == groupSize[rank]) {
+                        end = matchGroups(text, rank, runEnd, false);
+                    }
+                    if (end < 0) {
+                        // A keyword ending exactly here still gets the next run
+                        state.from[rank] = state.lastKeywordEnd[rank] == runEnd ? runEnd : -1;
+                    }
+                    break;
+                }
+                case ANCHOR_WORD: {
+                    int runLength = runEnd - runStart;
+                    boolean boundaryBefore = runStart == 0 || !OtpScanner.isWordAt(text, runStart - 1);
+                    if (!boundaryBefore) {
+                        continue;
+                    }
+                    start = runStart;
+                    if (groupSize[rank] == 0) {
+                        if (runLength >= minLength[rank] && runLength <= maxLength[rank]
+                                && isBoundaryAfter(text, runEnd)) {
+                            end = runEnd;
+                        }
+                    } else if (runLength == groupSize[rank]) {
+                        end = matchGroups(text, rank, runEnd, true);
+                    }
+                    break;
+                }
+                default: {
+                    int runLength = runEnd - runStart;
+                    if (runStart == 0 && runLength >= minLength[rank]) {
+                        start = 0;
+                        end = Math.min(runLength, maxLength[rank]);
+                    }
+                    break;
+                }
+            }
+
+            if (end >= 0) {
+                state.foundStart[rank] = start;
+                state.foundEnd[rank] = end;
+                if (rank < state.best) {
+                    state.best = rank;
+                }
+            }
+        }
+    }
+
+    /**
+     * Continue a grouped code whose first group ends at firstGroupEnd
+     * Takes the fewest groups whose total length is within range and that end where the code must end
+     *
+     * @return End offset of the code, or -1 if no valid grouping follows
+     */
+    private int matchGroups(CharSequence text, int rank, int firstGroupEnd, boolean requireBoundary) {
+        int length = text.length();
+        int size = groupSize[rank];
+        int total = size;
+        int position = firstGroupEnd;
+        while (true) {
+            if (total >= minLength[rank] && total <= maxLength[rank]) {
+                boolean ends = requireBoundary
+                        ? isBoundaryAfter(text, position)
+                        : position == length || !isCodeChar(text.charAt(position), rank);
+                if (ends) {
+                    return position;
+                }
+            }
+            if (total + size > maxLength[rank] || position + 1 + size > length
+                    || separators[rank].indexOf(text.charAt(position)) < 0) {
+                return -1;
+            }
+            for (int k = position + 1; k <= position + size; k++) {
+                if (!isCodeChar(text.charAt(k), rank)) {
+                    return -1;
+                }
+            }
+            position += 1 + size;
+            total += size;
+        }
+    }
+
+    private OtpMatch buildMatch(CharSequence text, int rank, ScanState state) {
+        int start = state.foundStart[rank];
+        int end = state.foundEnd[rank];
+        String code;
+        if (groupSize[rank] == 0) {
+            code = OtpScanner.copy(text, start, end);
+        } else {
+            char[] chars = new char[end - start];
+            int n = 0;
+            for (int k = start; k < end; k++) {
+                char c = text.charAt(k);
+                if (isCodeChar(c, rank)) {
+                    chars[n++] = DigitFolding.fold(c);
+                }
+            }
+            code = new String(chars, 0, n);
+        }
+        return new OtpMatch(code, patternIndex[rank], start, end);
+    }
+
+    private boolean isCodeChar(char c, int rank) {
+        if (DigitFolding.isDigit(c)) {
+            return true;
+        }
+        return alphanumeric[rank] && ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'));
+    }
+
+    private static boolean isBoundaryAfter(CharSequence text, int position) {
+        return position == text.length() || !OtpScanner.isWordAt(text, position);
+    }
+
+    /**
+     * Per-call scan state, indexed by rank
+     */
+    private static final class ScanState {
+        // Offset the keyword-anchored run starts from, and end of the last keyword seen
+        final int[] from;
+        final int[] lastKeywordEnd;
+        final int[] foundStart;
+        final int[] foundEnd;
+        // Rank of the best rule matched so far, or ruleCount if none
+        int best;
+
+        ScanState(int ruleCount) {
+            from = new int[ruleCount];
+            lastKeywordEnd = new int[ruleCount];
+            foundStart = new int[ruleCount];
+            foundEnd = new int[ruleCount];
+            Arrays.fill(from, -1);
+            Arrays.fill(lastKeywordEnd, -1);
+            Arrays.fill(foundStart, -1);
+            best = ruleCount;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.snagotp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-pass OTP scanner
+ * Recognises every supported OTP format in one left-to-right walk over the message
+ * instead of running one regex per format
+ *
+ * Supported formats, in priority order (same numbering as the original regex list):
+ *   1. Keyword + 4-8 digits        (?:code|pin|passcode|...)[^0-9]*([0-9]{4,8})
+ *   2. Standalone 4-8 digits       \b([0-9]{4,8})\b
+ *   3. Keyword + 4-8 alphanumerics (?:code|...)[^A-Za-z0-9]*([A-Za-z0-9]{4,8})
+ *   4. Split 3+3 digits            \b([0-9]{3}[\s-][0-9]{3})\b
+ *   5. Leading 6 digits            ^([0-9]{6})
+ * Keywords in every language are found together by one {@link KeywordIndex} in the same pass,
+ * so the keyword list can grow without slowing the scan
+ * Keywords are matched case-insensitively and word boundaries follow java.util.regex rules; for the
+ * original English keywords the result is the same code the regex cascade would have returned
+ * "[0-9]" also covers the native digits of the scripts in {@link DigitFolding}; codes are returned in ASCII
+ * Contributors: Keep the priority order above when adding formats
+ */
+public final class OtpScanner {
+    public static final int PATTERN_KEYWORD_NUMERIC = 1;
+    public static final int PATTERN_STANDALONE_NUMERIC = 2;
+    public static final int PATTERN_KEYWORD_ALPHANUMERIC = 3;
+    public static final int PATTERN_SPLIT_NUMERIC = 4;
+    public static final int PATTERN_LEADING_NUMERIC = 5;
+    public static final int PATTERN_COUNT = 5;
+
+    private static final int MIN_LENGTH = 4;
+    private static final int MAX_LENGTH = 8;
+    private static final int SPLIT_GROUP_LENGTH = 3;
+    private static final int LEADING_LENGTH = 6;
+
+    // Keywords that anchor patterns 1 and 3: the original English ones, then other languages
+    private static final String[] CODE_KEYWORDS = {
+        "otp", "code", "verification", "verify",
+        "código", "codice", "kod", "код", "कोड", "ओटीपी", "কোড", "رمز", "كود",
+        "验证码", "驗證碼", "校验码", "动态码", "コード", "認証番号", "인증번호", "인증코드"
+    };
+    // Keywords naming a PIN or password, which only anchor digits (pattern 1)
+    private static final String[] PIN_KEYWORDS = {
+        "pin", "passcode",
+        "senha", "clave", "contraseña", "пароль", "şifre", "密码", "暗証番号", "비밀번호"
+    };
+
+    private static final long KEYWORD_NUMERIC = 1;
+    private static final long KEYWORD_ALPHANUMERIC = 2;
+    // Usually read from the build-time image rather than compiled here
+    private static final KeywordIndex KEYWORD_INDEX =
+            PrecompiledMatchers.keywordIndex(numericKeywords(), keywordMasks());
+
+    private OtpScanner() {
+        // Utility class
+    }
+
+    /**
+     * Scan a message for an OTP
+     *
+     * @param text The message body
+     * @return The highest-priority match, or null if no format matched
+     */
+    public static OtpMatch scan(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+
+        final int length = text.length();
+
+        // Pattern 1 state: a keyword was seen since the last digit run
+        boolean keywordArmed = false;
+        // Pattern 3 state: offset the candidate run starts from, and end of the last keyword seen
+        int alnumFrom = -1;
+        int lastAlnumKeywordEnd = -1;
+
+        // Best candidate start/end for patterns 2-5 (pattern 1 returns immediately)
+        int standaloneStart = -1, standaloneEnd = -1;
+        int alnumStart = -1, alnumEnd = -1;
+        int splitStart = -1;
+        boolean leading = false;
+
+        int digitRunStart = -1;
+        int alnumRunStart = -1;
+        int keywordState = KeywordIndex.ROOT;
+
+        // One extra iteration at i == length closes any open run
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : '\0';
+            boolean digit = DigitFolding.isDigit(c);
+
+            if (digitRunStart >= 0 && !digit) {
+                int runLength = i - digitRunStart;
+
+                if (keywordArmed && runLength >= MIN_LENGTH) {
+                    int end = digitRunStart + Math.min(runLength, MAX_LENGTH);
+                    return new OtpMatch(copy(text, digitRunStart, end), PATTERN_KEYWORD_NUMERIC, digitRunStart, end);
+                }
+                keywordArmed = false;
+
+                boolean boundaryBefore = digitRunStart == 0 || !isWordAt(text, digitRunStart - 1);
+                if (standaloneStart < 0 && runLength >= MIN_LENGTH && runLength <= MAX_LENGTH
+                        && boundaryBefore && (i == length || !isWordAt(text, i))) {
+                    standaloneStart = digitRunStart;
+                    standaloneEnd = i;
+                }
+                if (splitStart < 0 && runLength == SPLIT_GROUP_LENGTH && boundaryBefore
+                        && isSplitTail(text, i, length)) {
+                    splitStart = digitRunStart;
+                }
+                if (digitRunStart == 0 && runLength >= LEADING_LENGTH) {
+                    leading = true;
+                }
+                digitRunStart = -1;
+            } else if (digit && digitRunStart < 0) {
+                digitRunStart = i;
+            }
+
+            boolean alnum = digit || isAsciiLetter(c);
+            if (alnumRunStart >= 0 && !alnum) {
+                if (alnumStart < 0 && alnumFrom >= 0 && alnumFrom < i) {
+                    int from = Math.max(alnumRunStart, alnumFrom);
+                    int runLength = i - from;
+                    if (runLength >= MIN_LENGTH) {
+                        alnumStart = from;
+                        alnumEnd = from + Math.min(runLength, MAX_LENGTH);
+                    } else {
+                        // A keyword ending exactly here still gets the next run
+                        alnumFrom = lastAlnumKeywordEnd == i ? i : -1;
+                    }
+                }
+                alnumRunStart = -1;
+            } else if (alnum && alnumRunStart < 0) {
+                alnumRunStart = i;
+            }
+
+            if (i < length) {
+                keywordState = KEYWORD_INDEX.step(keywordState, c);
+                long keywords = KEYWORD_INDEX.getMask(keywordState);
+                if (keywords != 0) {
+                    keywordArmed = true;
+                    if (alnumStart < 0 && (keywords & KEYWORD_ALPHANUMERIC) != 0) {
+                        int end = i + 1;
+                        if (alnumFrom < 0) {
+                            alnumFrom = end;
+                        }
+                        lastAlnumKeywordEnd = end;
+                    }
+                }
+            }
+        }
+
+        if (standaloneStart >= 0) {
+            return new OtpMatch(copy(text, standaloneStart, standaloneEnd),
+                    PATTERN_STANDALONE_NUMERIC, standaloneStart, standaloneEnd);
+        }
+        if (alnumStart >= 0) {
+            return new OtpMatch(copy(text, alnumStart, alnumEnd),
+                    PATTERN_KEYWORD_ALPHANUMERIC, alnumStart, alnumEnd);
+        }
+        if (splitStart >= 0) {
+            char[] code = new char[SPLIT_GROUP_LENGTH * 2];
+            for (int k = 0; k < SPLIT_GROUP_LENGTH; k++) {
+                code[k] = DigitFolding.fold(text.charAt(splitStart + k));
+                code[SPLIT_GROUP_LENGTH + k] = DigitFolding.fold(text.charAt(splitStart + SPLIT_GROUP_LENGTH + 1 + k));
+            }
+            int end = splitStart + SPLIT_GROUP_LENGTH * 2 + 1;
+            return new OtpMatch(new String(code), PATTERN_SPLIT_NUMERIC, splitStart, end);
+        }
+        if (leading) {
+            return new OtpMatch(copy(text, 0, LEADING_LENGTH), PATTERN_LEADING_NUMERIC, 0, LEADING_LENGTH);
+        }
+        return null;
+    }
+
+    /**
+     * Check for "[\s-][0-9]{3}\b" starting at the given offset
+     */
+    private static boolean isSplitTail(CharSequence text, int from, int length) {
+        int end = from + 1 + SPLIT_GROUP_LENGTH;
+        if (end > length || !isSplitSeparator(text.charAt(from))) {
+            return false;
+        }
+        for (int k = from + 1; k < end; k++) {
+            if (!DigitFolding.isDigit(text.charAt(k))) {
+                return false;
+            }
+        }
+        return end == length || !isWordAt(text, end);
+    }
+
+    /**
+     * @return Keywords that anchor a numeric code (pattern 1)
+     */
+    static List<String> numericKeywords() {
+        List<String> keywords = new ArrayList<>(Arrays.asList(CODE_KEYWORDS));
+        keywords.addAll(Arrays.asList(PIN_KEYWORDS));
+        return keywords;
+    }
+
+    /**
+     * @return Keywords that anchor an alphanumeric code (pattern 3)
+     */
+    static List<String> alphanumericKeywords() {
+        return Arrays.asList(CODE_KEYWORDS);
+    }
+
+    /**
+     * @return Mask of each keyword of {@link #numericKeywords()} in the scanner's keyword index
+     */
+    static long[] keywordMasks() {
+        long[] masks = new long[CODE_KEYWORDS.length + PIN_KEYWORDS.length];
+        for (int k = 0; k < masks.length; k++) {
+            masks[k] = k < CODE_KEYWORDS.length ? KEYWORD_NUMERIC | KEYWORD_ALPHANUMERIC : KEYWORD_NUMERIC;
+        }
+        return masks;
+    }
+
+    /**
+     * Copy a code out of the message, with its digits folded to ASCII
+     */
+    static String copy(CharSequence text, int start, int end) {
+        if (text instanceof String) {
+            return DigitFolding.fold(((String) text).substring(start, end));
+        }
+        char[] chars = new char[end - start];
+        for (int k = start; k < end; k++) {
+            chars[k - start] = DigitFolding.fold(text.charAt(k));
+        }
+        return new String(chars);
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    // Same separators as "[\s-]" without UNICODE_CHARACTER_CLASS
+    private static boolean isSplitSeparator(char c) {
+        return c == ' ' || c == '-' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // Word characters as seen by "\b"; a combining mark counts when it follows a letter or digit
+    static boolean isWordAt(CharSequence text, int index) {
+        char c = text.charAt(index);
+        if (c == '_' || Character.isLetterOrDigit(c)) {
+            return true;
+        }
+        while (Character.getType(c) == Character.NON_SPACING_MARK) {
+            if (--index < 0) {
+                return false;
+            }
+            c = text.charAt(index);
+            if (Character.isLetterOrDigit(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,309 @@
+package com.snagotp.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Running OTP counts by sender, by day and by hour of day
+ * Updated once per extraction and never recomputed from history, so every query is a lookup
+ * no matter how many OTPs have been seen. Days and hours are in the time zone given at construction.
+ * Day counts cover the last {@link #DAY_BUCKETS} days; older days are dropped as new ones arrive.
+ * At most {@link #MAX_SENDERS} senders are counted on their own. A new sender takes the place of the one
+ * with the fewest OTPs, least recent first, whose count moves to {@link #getOtherSenderCount}; a sender's
+ * count therefore covers its OTPs since it last entered the table, and frequent senders stay in it.
+ */
+public final class OtpStatistics {
+    /** Number of most recent days with their own count */
+    public static final int DAY_BUCKETS = 400;
+
+    /** Number of senders with their own count */
+    public static final int MAX_SENDERS = 128;
+
+    private static final int MAGIC = 0x534f5353; // "SOSS"
+    // Version 2 adds the count of senders without their own entry
+    private static final int VERSION = 2;
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final long MILLIS_PER_HOUR = 60L * 60 * 1000;
+    private static final long NO_DAY = Long.MIN_VALUE;
+
+    private final TimeZone timeZone;
+    private long total;
+    private final long[] hourCounts = new long[24];
+    // Ring of days: slot = day mod DAY_BUCKETS, tagged with the day it currently holds
+    private final long[] days = new long[DAY_BUCKETS];
+    private final long[] dayCounts = new long[DAY_BUCKETS];
+    private final Map<String, SenderCount> senders = new HashMap<>();
+    // OTPs of senders that were evicted or never had their own entry
+    private long otherSenderCount;
+
+    /**
+     * @param timeZone Zone used to assign timestamps to days and hours
+     */
+    public OtpStatistics(TimeZone timeZone) {
+        this.timeZone = timeZone;
+        Arrays.fill(days, NO_DAY);
+    }
+
+    /**
+     * Count one extracted OTP
+     *
+     * @param sender Originating address, or null if unknown
+     * @param timestampMillis Time the message was received
+     */
+    public synchronized void record(String sender, long timestampMillis) {
+        total++;
+        long local = timestampMillis + timeZone.getOffset(timestampMillis);
+        hourCounts[(int) (Math.floorMod(local, MILLIS_PER_DAY) / MILLIS_PER_HOUR)]++;
+        addDay(Math.floorDiv(local, MILLIS_PER_DAY), 1);
+        if (sender != null) {
+            addSender(sender, 1, timestampMillis);
+        }
+    }
+
+    /**
+     * @return OTPs counted in total
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * @param hour Hour of day, 0-23
+     * @return OTPs received in that hour on any day
+     */
+    public synchronized long getHourCount(int hour) {
+        return hourCounts[hour];
+    }
+
+    /**
+     * @param day Day number from {@link #dayOf}
+     * @return OTPs received that day, 0 if it is older than the retained days
+     */
+    public synchronized long getDayCount(long day) {
+        int slot = (int) Math.floorMod(day, (long) DAY_BUCKETS);
+        return days[slot] == day ? dayCounts[slot] : 0;
+    }
+
+    /**
+     * @param sender Originating address
+     * @return OTPs from that sender
+     */
+    public synchronized long getSenderCount(String sender) {
+        SenderCount count = senders.get(sender);
+        return count != null ? count.count : 0;
+    }
+
+    /**
+     * @param sender Originating address
+     * @return Timestamp of the sender's latest OTP, or 0 if none
+     */
+    public synchronized long getSenderLastMillis(String sender) {
+        SenderCount count = senders.get(sender);
+        return count != null ? count.lastMillis : 0;
+    }
+
+    /**
+     * @return Number of senders with their own count, at most {@link #MAX_SENDERS}
+     */
+    public synchronized int getSenderTotal() {
+        return senders.size();
+    }
+
+    /**
+     * @return OTPs from senders without their own count
+     */
+    public synchronized long getOtherSenderCount() {
+        return otherSenderCount;
+    }
+
+    /**
+     * One pass over the bounded sender table, keeping only the best limit entries
+     *
+     * @param limit Maximum number of senders
+     * @return Senders with the most OTPs, most first
+     */
+    public synchronized List<String> getTopSenders(int limit) {
+        String[] names = new String[Math.max(0, Math.min(limit, senders.size()))];
+        long[] counts = new long[names.length];
+        int size = 0;
+        for (Map.Entry<String, SenderCount> entry : senders.entrySet()) {
+            long count = entry.getValue().count;
+            if (size == names.length && (size == 0 || count <= counts[size - 1])) {
+                continue;
+            }
+            int i = size < names.length ? size++ : size - 1;
+            while (i > 0 && counts[i - 1] < count) {
+                names[i] = names[i - 1];
+                counts[i] = counts[i - 1];
+                i--;
+            }
+            names[i] = entry.getKey();
+            counts[i] = count;
+        }
+        return new ArrayList<>(Arrays.asList(names));
+    }
+
+    /**
+     * @param timestampMillis Time since the epoch
+     * @return Day number in this instance's time zone, for {@link #getDayCount}
+     */
+    public long dayOf(long timestampMillis) {
+        return Math.floorDiv(timestampMillis + timeZone.getOffset(timestampMillis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Add another instance's counts to this one, e.g. persisted counts loaded after live ones were recorded
+     *
+     * @param other Counts to add; must use the same time zone
+     */
+    public void merge(OtpStatistics other) {
+        if (other == this) {
+            throw new IllegalArgumentException("Cannot merge statistics into themselves");
+        }
+        synchronized (other) {
+            synchronized (this) {
+                total += other.total;
+                for (int hour = 0; hour < 24; hour++) {
+                    hourCounts[hour] += other.hourCounts[hour];
+                }
+                for (int slot = 0; slot < DAY_BUCKETS; slot++) {
+                    if (other.days[slot] != NO_DAY) {
+                        addDay(other.days[slot], other.dayCounts[slot]);
+                    }
+                }
+                for (Map.Entry<String, SenderCount> entry : other.senders.entrySet()) {
+                    addSender(entry.getKey(), entry.getValue().count, entry.getValue().lastMillis);
+                }
+                otherSenderCount += other.otherSenderCount;
+            }
+        }
+    }
+
+    /**
+     * Write all counts
+     *
+     * @param out Destination
+     * @throws IOException if writing fails
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(total);
+        for (long count : hourCounts) {
+            out.writeLong(count);
+        }
+        int dayTotal = 0;
+        for (long day : days) {
+            if (day != NO_DAY) {
+                dayTotal++;
+            }
+        }
+        out.writeInt(dayTotal);
+        for (int slot = 0; slot < DAY_BUCKETS; slot++) {
+            if (days[slot] != NO_DAY) {
+                out.writeLong(days[slot]);
+                out.writeLong(dayCounts[slot]);
+            }
+        }
+        out.writeInt(senders.size());
+        for (Map.Entry<String, SenderCount> entry : senders.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().count);
+            out.writeLong(entry.getValue().lastMillis);
+        }
+        out.writeLong(otherSenderCount);
+    }
+
+    /**
+     * Read counts written by {@link #writeTo}
+     *
+     * @param in Source
+     * @param timeZone Zone used for new records
+     * @return The counts read
+     * @throws IOException if the data is unreadable or from an unknown format version
+     */
+    public static OtpStatistics readFrom(DataInput in, TimeZone timeZone) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Unrecognised statistics format");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unrecognised statistics version " + version);
+        }
+        OtpStatistics statistics = new OtpStatistics(timeZone);
+        statistics.total = in.readLong();
+        for (int hour = 0; hour < 24; hour++) {
+            statistics.hourCounts[hour] = in.readLong();
+        }
+        int dayTotal = in.readInt();
+        for (int i = 0; i < dayTotal; i++) {
+            statistics.addDay(in.readLong(), in.readLong());
+        }
+        int senderTotal = in.readInt();
+        for (int i = 0; i < senderTotal; i++) {
+            statistics.addSender(in.readUTF(), in.readLong(), in.readLong());
+        }
+        // Version 1 kept every sender; those beyond the bound have been added to the other count above
+        if (version >= 2) {
+            statistics.otherSenderCount += in.readLong();
+        }
+        return statistics;
+    }
+
+    private void addDay(long day, long count) {
+        int slot = (int) Math.floorMod(day, (long) DAY_BUCKETS);
+        if (days[slot] == day) {
+            dayCounts[slot] += count;
+        } else if (days[slot] == NO_DAY || days[slot] < day) {
+            days[slot] = day;
+            dayCounts[slot] = count;
+        }
+        // Otherwise the day is at least DAY_BUCKETS older than the one held, e.g. a backfilled message
+    }
+
+    private void addSender(String sender, long count, long lastMillis) {
+        SenderCount senderCount = senders.get(sender);
+        if (senderCount == null) {
+            if (senders.size() >= MAX_SENDERS) {
+                Map.Entry<String, SenderCount> weakest = weakestSender();
+                // Merged or loaded counts smaller than every tracked one would be evicted by the next sender
+                if (count < weakest.getValue().count) {
+                    otherSenderCount += count;
+                    return;
+                }
+                otherSenderCount += weakest.getValue().count;
+                senders.remove(weakest.getKey());
+            }
+            senderCount = new SenderCount();
+            senders.put(sender, senderCount);
+        }
+        senderCount.count += count;
+        senderCount.lastMillis = Math.max(senderCount.lastMillis, lastMillis);
+    }
+
+    // Linear, but the table is small and this only runs when a new sender arrives with the table full
+    private Map.Entry<String, SenderCount> weakestSender() {
+        Map.Entry<String, SenderCount> weakest = null;
+        for (Map.Entry<String, SenderCount> entry : senders.entrySet()) {
+            SenderCount candidate = entry.getValue();
+            if (weakest == null || candidate.count < weakest.getValue().count
+                    || (candidate.count == weakest.getValue().count
+                        && candidate.lastMillis < weakest.getValue().lastMillis)) {
+                weakest = entry;
+            }
+        }
+        return weakest;
+    }
+
+    private static final class SenderCount {
+        long count;
+        long lastMillis;
+    }
+}
@@ -0,0 +1,260 @@
+package com.snagotp.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Built-in matcher tables compiled at build time, so a cold process does not compile them on its first message
+ * The build runs {@link #main} to write the keyword automaton of {@link OtpScanner} and the built-in
+ * {@link OtpPrefilter} into an image that the app ships as an asset; at run time the image is read once,
+ * on first use, from the {@link Source} the app installed
+ *
+ * Each entry is keyed by a hash of what it was compiled from (keywords after case folding, masks, rule
+ * fields), so an entry is only used for exactly the definition the running code asks for; a missing source,
+ * an image from another build, a bad checksum or a malformed entry all fall back to compiling at run time
+ */
+public final class PrecompiledMatchers {
+    /** File name of the image among the app's assets */
+    public static final String ASSET_NAME = "otp_matchers.bin";
+
+    private static final int MAGIC = 0x534f504d; // "SOPM"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 16;
+    private static final byte KIND_KEYWORD_INDEX = 1;
+    private static final byte KIND_PREFILTER = 2;
+
+    /**
+     * Supplies the image bytes
+     */
+    public interface Source {
+        /**
+         * @return The image, e.g. an asset read into memory, positioned at its start
+         * @throws IOException if it cannot be opened
+         */
+        ByteBuffer open() throws IOException;
+    }
+
+    private static Source source;
+    // Loaded on first use; empty if there was no usable image
+    private static Map<Long, KeywordIndex> keywordIndexes;
+    private static Map<Long, OtpPrefilter> prefilters;
+    private static boolean loaded;
+
+    private PrecompiledMatchers() {
+        // Utility class
+    }
+
+    /**
+     * Install the image source; must happen before the first extraction to have any effect
+     *
+     * @param imageSource Source of the image, or null for none
+     */
+    public static synchronized void setSource(Source imageSource) {
+        source = imageSource;
+    }
+
+    /**
+     * @return true if an image was read and verified
+     */
+    public static synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * The precompiled index for these keywords, or a freshly compiled one
+     * Same arguments and result as {@link KeywordIndex#compile}
+     */
+    static KeywordIndex keywordIndex(List<String> keywords, long[] masks) {
+        KeywordIndex index;
+        synchronized (PrecompiledMatchers.class) {
+            load();
+            index = keywordIndexes.get(keywordHash(keywords, masks));
+        }
+        return index != null ? index : KeywordIndex.compile(keywords, masks);
+    }
+
+    /**
+     * The precompiled prefilter for these rules, or a freshly compiled one
+     * Same arguments and result as {@link OtpPrefilter#compile}
+     */
+    static OtpPrefilter prefilter(List<OtpRule> rules) {
+        OtpPrefilter prefilter;
+        synchronized (PrecompiledMatchers.class) {
+            load();
+            prefilter = prefilters.get(ruleHash(rules));
+        }
+        return prefilter != null ? prefilter : OtpPrefilter.compile(rules);
+    }
+
+    /**
+     * Compile the built-in tables and write the image
+     *
+     * @param out Destination
+     * @throws IOException if writing fails
+     */
+    public static void write(OutputStream out) throws IOException {
+        List<String> keywords = OtpScanner.numericKeywords();
+        long[] masks = OtpScanner.keywordMasks();
+        List<OtpRule> rules = OtpRule.builtIns();
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(payload);
+        entries.writeInt(2);
+        entries.writeByte(KIND_KEYWORD_INDEX);
+        entries.writeLong(keywordHash(keywords, masks));
+        KeywordIndex.compile(keywords, masks).writeTo(entries);
+        entries.writeByte(KIND_PREFILTER);
+        entries.writeLong(ruleHash(rules));
+        OtpPrefilter.compile(rules).writeTo(entries);
+        entries.flush();
+
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        DataOutputStream image = new DataOutputStream(out);
+        image.writeInt(MAGIC);
+        image.writeInt(VERSION);
+        image.writeInt(bytes.length);
+        image.writeInt((int) crc.getValue());
+        image.write(bytes);
+        image.flush();
+    }
+
+    /**
+     * Build-time entry point
+     *
+     * @param args Path of the image to write
+     * @throws IOException if writing fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: PrecompiledMatchers <output file>");
+        }
+        File file = new File(args[0]);
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(out);
+        }
+    }
+
+    // Guarded by PrecompiledMatchers.class
+    private static void load() {
+        if (keywordIndexes != null) {
+            return;
+        }
+        keywordIndexes = new HashMap<>();
+        prefilters = new HashMap<>();
+        if (source == null) {
+            return;
+        }
+        try {
+            read(source.open());
+            loaded = true;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // Compile at run time instead
+            keywordIndexes.clear();
+            prefilters.clear();
+        }
+    }
+
+    private static void read(ByteBuffer image) throws IOException {
+        if (image.remaining() < HEADER_LENGTH || image.getInt() != MAGIC || image.getInt() != VERSION) {
+            throw new IOException("Unrecognised matcher image");
+        }
+        int length = image.getInt();
+        int checksum = image.getInt();
+        if (length < 0 || length > image.remaining()) {
+            throw new IOException("Truncated matcher image");
+        }
+        if (checksum(image.duplicate(), length) != checksum) {
+            throw new IOException("Matcher image checksum mismatch");
+        }
+
+        int end = image.position() + length;
+        int count = image.getInt();
+        for (int e = 0; e < count; e++) {
+            byte kind = image.get();
+            long hash = image.getLong();
+            if (kind == KIND_KEYWORD_INDEX) {
+                keywordIndexes.put(hash, KeywordIndex.readFrom(image));
+            } else if (kind == KIND_PREFILTER) {
+                prefilters.put(hash, OtpPrefilter.readFrom(image));
+            } else {
+                throw new IOException("Unknown matcher image entry " + kind);
+            }
+        }
+        if (image.position() != end) {
+            throw new IOException("Matcher image length mismatch");
+        }
+    }
+
+    // CRC32.update(ByteBuffer) needs API 26, so a direct buffer is fed through a small array
+    private static int checksum(ByteBuffer data, int length) {
+        CRC32 crc = new CRC32();
+        if (data.hasArray()) {
+            crc.update(data.array(), data.arrayOffset() + data.position(), length);
+            return (int) crc.getValue();
+        }
+        byte[] chunk = new byte[Math.min(length, 4096)];
+        for (int done = 0; done < length; ) {
+            int n = Math.min(chunk.length, length - done);
+            data.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+            done += n;
+        }
+        return (int) crc.getValue();
+    }
+
+    // Keywords are hashed as the index sees them, so a platform that folds case differently misses
+    private static long keywordHash(List<String> keywords, long[] masks) {
+        long hash = MessageFingerprint.EMPTY;
+        for (int k = 0; k < masks.length; k++) {
+            hash = addFolded(hash, keywords.get(k));
+            hash = MessageFingerprint.add(hash, masks[k]);
+        }
+        return hash;
+    }
+
+    private static long ruleHash(List<OtpRule> rules) {
+        long hash = MessageFingerprint.EMPTY;
+        for (OtpRule rule : rules) {
+            hash = MessageFingerprint.add(hash, rule.getPriority());
+            hash = addFolded(hash, rule.getAnchor().name());
+            hash = addFolded(hash, rule.getCharset().name());
+            hash = MessageFingerprint.add(hash, rule.getMinLength());
+            hash = MessageFingerprint.add(hash, rule.getMaxLength());
+            hash = MessageFingerprint.add(hash, rule.getGroupSize());
+            hash = addFolded(hash, rule.getSeparators());
+            hash = MessageFingerprint.add(hash, rule.getKeywords().size());
+            for (String keyword : rule.getKeywords()) {
+                hash = addFolded(hash, keyword);
+            }
+        }
+        return hash;
+    }
+
+    // Length first, so consecutive strings cannot run together
+    private static long addFolded(long hash, String text) {
+        if (text == null) {
+            return MessageFingerprint.add(hash, -1L);
+        }
+        hash = MessageFingerprint.add(hash, text.length());
+        for (int i = 0; i < text.length(); i++) {
+            hash = MessageFingerprint.add(hash, KeywordIndex.foldCase(text.charAt(i)));
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,259 @@
+package com.snagotp.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps originating addresses to service identities with small interned int ids
+ * "VM-HDFCBK", "AD-HDFCBK-S" and "HDFCBK" share a canonical key, as do "+91 98000 12345" and "098000 12345";
+ * the key is then looked up in the user's overrides, then in the shipped table, and otherwise stands
+ * for its own service. Each service name is interned once, so dedup, templates and statistics can key
+ * on an int instead of normalizing strings per message. Recent addresses are kept in an LRU cache.
+ *
+ * Ids are only meaningful within one instance and are not stable across processes; persist names.
+ * Ids are never reused, so interned names are kept for the life of the instance. Services from the
+ * table and the overrides are bounded by those maps; addresses that stand for themselves, mostly
+ * phone numbers, are only interned up to {@link #MAX_OWN_SERVICES}, after which new ones get
+ * {@link #UNKNOWN} as their id while {@link #getServiceName(String)} still names them.
+ */
+public final class SenderNormalizer {
+    /** Id for a missing or blank address */
+    public static final int UNKNOWN = -1;
+
+    /** Maximum number of addresses interned as their own service */
+    public static final int MAX_OWN_SERVICES = 4096;
+
+    /** Default number of addresses cached */
+    public static final int DEFAULT_CACHE_SIZE = 128;
+
+    // Digits kept for the national part of a phone number
+    private static final int NATIONAL_NUMBER_LENGTH = 10;
+
+    private final Map<String, String> table;
+    private Map<String, String> overrides = Collections.emptyMap();
+
+    private final Map<String, Integer> cache;
+    private final Map<String, Integer> serviceIds = new HashMap<>();
+    private final List<String> serviceNames = new ArrayList<>();
+    private int ownServiceCount;
+
+    /**
+     * @param table Service names keyed by address, e.g. from {@link #parseTable}; keys are canonicalized
+     */
+    public SenderNormalizer(Map<String, String> table) {
+        this(table, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param table Service names keyed by address; keys are canonicalized
+     * @param cacheSize Number of recent addresses remembered
+     */
+    public SenderNormalizer(Map<String, String> table, final int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cacheSize must be positive: " + cacheSize);
+        }
+        this.table = canonicalize(table);
+        this.cache = new LinkedHashMap<String, Integer>(cacheSize * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Replace the user's overrides, which take precedence over the table
+     * Ids already handed out stay valid
+     *
+     * @param overrides Service names keyed by address; keys are canonicalized
+     */
+    public synchronized void setOverrides(Map<String, String> overrides) {
+        this.overrides = canonicalize(overrides);
+        cache.clear();
+    }
+
+    /**
+     * @param sender Originating address, may be null
+     * @return Service id, or {@link #UNKNOWN} for a missing or blank address, or for a new address that
+     *         stands for itself once {@link #MAX_OWN_SERVICES} of those have been interned
+     */
+    public synchronized int getServiceId(String sender) {
+        if (sender == null) {
+            return UNKNOWN;
+        }
+        Integer cached = cache.get(sender);
+        if (cached != null) {
+            return cached;
+        }
+        String key = canonicalKey(sender);
+        int id;
+        if (key.isEmpty()) {
+            id = UNKNOWN;
+        } else {
+            String name = knownName(key);
+            if (name != null) {
+                id = intern(name);
+            } else if (ownServiceCount < MAX_OWN_SERVICES || serviceIds.containsKey(key)) {
+                int before = serviceNames.size();
+                id = intern(key);
+                if (serviceNames.size() > before) {
+                    ownServiceCount++;
+                }
+            } else {
+                id = UNKNOWN;
+            }
+        }
+        cache.put(sender, id);
+        return id;
+    }
+
+    /**
+     * @param id Id from {@link #getServiceId}
+     * @return Service name, the same instance for every call, or null for {@link #UNKNOWN}
+     */
+    public synchronized String getServiceName(int id) {
+        if (id == UNKNOWN) {
+            return null;
+        }
+        if (id < 0 || id >= serviceNames.size()) {
+            throw new IllegalArgumentException("Unknown service id: " + id);
+        }
+        return serviceNames.get(id);
+    }
+
+    /**
+     * @param sender Originating address, may be null
+     * @return Service name for the address, or null if it is missing or blank
+     */
+    public synchronized String getServiceName(String sender) {
+        int id = getServiceId(sender);
+        if (id != UNKNOWN) {
+            return serviceNames.get(id);
+        }
+        // Past the interning limit the address still names its own service
+        String key = sender != null ? canonicalKey(sender) : "";
+        return key.isEmpty() ? null : key;
+    }
+
+    /**
+     * @return Number of distinct services seen; ids are 0 to this value - 1
+     */
+    public synchronized int getServiceCount() {
+        return serviceNames.size();
+    }
+
+    /**
+     * Canonical form of an address, used for table and override keys
+     * DLT headers give their service part, phone numbers their last ten digits, short codes their
+     * digits, and anything else its letters and digits in upper case
+     *
+     * @param sender Originating address
+     * @return Canonical key, empty if the address has no letters or digits
+     */
+    public static String canonicalKey(String sender) {
+        String service = serviceName(sender);
+        String text = service != null ? service : sender;
+        StringBuilder builder = new StringBuilder(text.length());
+        boolean digitsOnly = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                builder.append(c);
+                digitsOnly &= c >= '0' && c <= '9';
+            }
+        }
+        if (digitsOnly && builder.length() > NATIONAL_NUMBER_LENGTH) {
+            return builder.substring(builder.length() - NATIONAL_NUMBER_LENGTH);
+        }
+        if (digitsOnly && builder.length() == NATIONAL_NUMBER_LENGTH + 1 && builder.charAt(0) == '0') {
+            // Trunk prefix of a national number
+            return builder.substring(1);
+        }
+        return builder.toString().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Service part of an alphanumeric sender ID
+     * Strips the two-letter operator/region prefix of DLT headers ("AX-HDFCBK", "VM-AMAZON-S")
+     * and the trailing message-type suffix
+     *
+     * @param sender Originating address
+     * @return Service name, or null for phone numbers and senders without a prefix
+     */
+    public static String serviceName(String sender) {
+        if (sender == null || sender.length() < 4 || sender.charAt(2) != '-'
+                || !Character.isLetter(sender.charAt(0)) || !Character.isLetter(sender.charAt(1))) {
+            return null;
+        }
+        int end = sender.length();
+        if (end >= 6 && sender.charAt(end - 2) == '-') {
+            end -= 2;
+        }
+        return end > 3 ? sender.substring(3, end) : null;
+    }
+
+    /**
+     * Read a sender table: one "address&lt;TAB&gt;service name" per line, '#' starts a comment line
+     *
+     * @param reader Table source; not closed
+     * @return Service names keyed by address as written
+     * @throws IOException if reading fails or a line is malformed
+     */
+    public static Map<String, String> parseTable(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        Map<String, String> table = new HashMap<>();
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            if (tab <= 0 || tab == line.length() - 1) {
+                throw new IOException("Malformed sender table line " + number + ": " + line);
+            }
+            table.put(line.substring(0, tab).trim(), line.substring(tab + 1).trim());
+        }
+        return table;
+    }
+
+    private String knownName(String key) {
+        String name = overrides.get(key);
+        return name != null ? name : table.get(key);
+    }
+
+    private int intern(String name) {
+        Integer id = serviceIds.get(name);
+        if (id == null) {
+            id = serviceNames.size();
+            serviceNames.add(name);
+            serviceIds.put(name, id);
+        }
+        return id;
+    }
+
+    private static Map<String, String> canonicalize(Map<String, String> names) {
+        if (names == null || names.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> canonical = new HashMap<>(names.size() * 4 / 3 + 1);
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            String key = canonicalKey(entry.getKey());
+            String name = entry.getValue() != null ? entry.getValue().trim() : "";
+            if (!key.isEmpty() && !name.isEmpty()) {
+                canonical.put(key, name);
+            }
+        }
+        return canonical;
+    }
+}
@@ -0,0 +1,296 @@
+package com.snagotp.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Type-ahead search over history entries by sender ID and service name
+ * Each entry is indexed under a few normalized terms: the sender itself, the service part of a
+ * DLT-style header ("AX-HDFCBK" gives "hdfcbk") and the national part of long phone numbers.
+ * Terms live in a sorted map, so a prefix selects a contiguous range; each term keeps its entry ids
+ * in ascending order, and a search merges those lists from the newest end and stops at the limit.
+ * Cost depends on the number of matching terms and the limit, not on the size of the history.
+ *
+ * Entry ids are supplied by the caller and must increase with every {@link #add} (e.g. a history
+ * sequence number), so larger ids are newer. Entries the caller no longer holds are dropped with
+ * {@link #removeBefore}, so the index stays proportional to the live history.
+ */
+public final class SenderSearchIndex {
+    // Digits kept for the national part of a phone number
+    private static final int NATIONAL_NUMBER_LENGTH = 10;
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final Postings all = new Postings();
+    // Entries below this id have been dropped by the caller; swept out once they outnumber the live ones
+    private int minLiveId = Integer.MIN_VALUE;
+
+    /**
+     * Index an entry
+     *
+     * @param entryId Id of the entry, larger than any id added before
+     * @param sender Originating address; null entries are only returned for an empty query
+     */
+    public synchronized void add(int entryId, String sender) {
+        if (all.size > 0 && entryId <= all.last()) {
+            throw new IllegalArgumentException("Entry ids must increase: " + entryId + " after " + all.last());
+        }
+        all.add(entryId);
+        if (sender == null) {
+            return;
+        }
+        String normalized = normalize(sender);
+        addTerm(normalized, entryId);
+        String service = SenderNormalizer.serviceName(sender);
+        if (service != null) {
+            addTerm(normalize(service), entryId);
+        }
+        if (normalized.length() > NATIONAL_NUMBER_LENGTH && isDigits(normalized)) {
+            addTerm(normalized.substring(normalized.length() - NATIONAL_NUMBER_LENGTH), entryId);
+        }
+    }
+
+    /**
+     * Forget entries older than minId, e.g. those a fixed-size history has overwritten
+     * Cheap enough to call after every {@link #add}: the postings are only swept once the forgotten
+     * entries outnumber the live ones, so the sweep is paid for by the adds since the last one
+     *
+     * @param minId Smallest entry id still in use
+     */
+    public synchronized void removeBefore(int minId) {
+        if (minId <= minLiveId) {
+            return;
+        }
+        minLiveId = minId;
+        int stale = all.countBelow(minId);
+        if (stale == 0 || stale < all.size - stale) {
+            return;
+        }
+        all.removeBefore(minId);
+        Iterator<Postings> iterator = terms.values().iterator();
+        while (iterator.hasNext()) {
+            Postings postings = iterator.next();
+            postings.removeBefore(minId);
+            if (postings.size == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Find entries whose sender or service starts with the query
+     *
+     * @param query Text typed so far; case, spaces and punctuation are ignored
+     * @param limit Maximum number of results
+     * @return Entry ids, newest first
+     */
+    public int[] search(String query, int limit) {
+        return search(query, limit, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Find entries whose sender or service starts with the query, ignoring entries older than minId
+     * e.g. those a fixed-size history has already dropped
+     *
+     * @param query Text typed so far; case, spaces and punctuation are ignored
+     * @param limit Maximum number of results
+     * @param minId Smallest entry id to return
+     * @return Entry ids, newest first
+     */
+    public synchronized int[] search(String query, int limit, int minId) {
+        minId = Math.max(minId, minLiveId);
+        String prefix = query == null ? "" : normalize(query);
+        if (limit <= 0) {
+            return new int[0];
+        }
+        if (prefix.isEmpty()) {
+            return all.newest(limit, minId);
+        }
+
+        SortedMap<String, Postings> range = terms.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (range.isEmpty()) {
+            return new int[0];
+        }
+        if (range.size() == 1) {
+            return range.values().iterator().next().newest(limit, minId);
+        }
+
+        // Merge from the newest end of each list; an entry under several terms is returned once
+        List<Cursor> cursors = new ArrayList<>(range.size());
+        for (Postings postings : range.values()) {
+            if (postings.last() >= minId) {
+                cursors.add(new Cursor(postings));
+            }
+        }
+        if (cursors.isEmpty()) {
+            return new int[0];
+        }
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(cursors);
+        int[] results = new int[limit];
+        int count = 0;
+        int previous = -1;
+        while (count < limit && !queue.isEmpty()) {
+            Cursor cursor = queue.poll();
+            int id = cursor.current();
+            if (id < minId) {
+                // Every remaining cursor is at this id or older
+                break;
+            }
+            if (count == 0 || id != previous) {
+                results[count++] = id;
+                previous = id;
+            }
+            if (cursor.advance()) {
+                queue.add(cursor);
+            }
+        }
+        return count == limit ? results : Arrays.copyOf(results, count);
+    }
+
+    /**
+     * @return Number of entries indexed, including forgotten ones not swept out yet
+     */
+    public synchronized int size() {
+        return all.size;
+    }
+
+    /**
+     * @return Number of distinct terms
+     */
+    public synchronized int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Lower-case and keep only letters and digits, so "AX-HDFCBK", "ax hdfcbk" and "+91 98000" compare
+     * the way users type them
+     *
+     * @param text Sender, service or query
+     * @return Normalized form, possibly empty
+     */
+    public static String normalize(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                builder.append(c);
+            }
+        }
+        return builder.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private void addTerm(String term, int entryId) {
+        if (term.isEmpty()) {
+            return;
+        }
+        Postings postings = terms.get(term);
+        if (postings == null) {
+            postings = new Postings();
+            terms.put(term, postings);
+        }
+        postings.add(entryId);
+    }
+
+    private static boolean isDigits(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ascending entry ids under one term
+     */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            // The same entry can reach a term twice, e.g. a sender that is its own service name
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        int last() {
+            return ids[size - 1];
+        }
+
+        int countBelow(int id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ids[middle] < id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        void removeBefore(int id) {
+            int stale = countBelow(id);
+            if (stale == 0) {
+                return;
+            }
+            size -= stale;
+            if (size == 0 || ids.length > 4 * size) {
+                ids = Arrays.copyOfRange(ids, stale, stale + Math.max(size * 2, 4));
+            } else {
+                System.arraycopy(ids, stale, ids, 0, size);
+            }
+        }
+
+        int[] newest(int limit, int minId) {
+            int n = 0;
+            while (n < limit && n < size && ids[size - 1 - n] >= minId) {
+                n++;
+            }
+            int[] result = new int[n];
+            for (int k = 0; k < n; k++) {
+                result[k] = ids[size - 1 - k];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Walks one postings list from newest to oldest; ordered newest first
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+        private final Postings postings;
+        private int position;
+
+        Cursor(Postings postings) {
+            this.postings = postings;
+            this.position = postings.size - 1;
+        }
+
+        int current() {
+            return postings.ids[position];
+        }
+
+        boolean advance() {
+            return --position >= 0;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return Integer.compare(other.current(), current());
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.snagotp.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers, per sender, where the OTP was found in that sender's last message
+ * Senders are identified by their {@link SenderNormalizer} service id, so "VM-HDFCBK" and "AD-HDFCBK" share a template
+ * Most OTPs come from a few senders that always use the same template, e.g. "<code> is your HDFC OTP",
+ * so the next message from the same sender is first checked at the learned position
+ * On a miss the full scan runs and the template is re-learned
+ *
+ * A template is the pattern that matched, the code's offset and run length, whether a word boundary
+ * follows the run, and the few characters just before the code; all of them must match for the fast
+ * path to be taken
+ * The table is bounded and evicts the least recently used sender
+ *
+ * Templates only describe built-in formats, and a user rule may outrank the format a template has learned,
+ * so while user rules are set every message takes the full scan
+ * A change of rules in {@link OtpExtractor#setCustomRules} clears the table before its next lookup
+ */
+public final class SenderTemplateCache {
+    /** Default number of senders remembered */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    // Characters before the code that must be unchanged for a template hit
+    private static final int ANCHOR_LENGTH = 8;
+
+    private final Map<Integer, Template> templates;
+    // OtpExtractor rules generation the templates were learned under; guarded by templates
+    private int generation = OtpExtractor.getRulesGeneration();
+
+    public SenderTemplateCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Maximum number of senders remembered
+     */
+    public SenderTemplateCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.templates = new LinkedHashMap<Integer, Template>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Template> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Find the OTP in a message, trying the sender's learned template before a full scan
+     *
+     * @param serviceId Sender's service id; {@link SenderNormalizer#UNKNOWN} skips the fast path
+     * @param messageText The message body
+     * @return The match, or null if no OTP found
+     */
+    public OtpMatch find(int serviceId, CharSequence messageText) {
+        return OtpExtractor.prefilter(messageText) ? findAccepted(serviceId, messageText) : null;
+    }
+
+    /**
+     * Same as {@link #find}, for a message {@link OtpExtractor#prefilter} has already accepted
+     *
+     * @param serviceId Sender's service id; {@link SenderNormalizer#UNKNOWN} skips the fast path
+     * @param messageText The message body
+     * @return The match, or null if no OTP found
+     */
+    public OtpMatch findAccepted(int serviceId, CharSequence messageText) {
+        if (serviceId == SenderNormalizer.UNKNOWN || !OtpExtractor.getCustomRules().isEmpty()) {
+            return OtpExtractor.findAcceptedOtp(messageText);
+        }
+
+        int rulesGeneration = OtpExtractor.getRulesGeneration();
+        Template template;
+        synchronized (templates) {
+            if (generation != rulesGeneration) {
+                templates.clear();
+                generation = rulesGeneration;
+            }
+            template = templates.get(serviceId);
+        }
+        if (template != null) {
+            long startNanos = System.nanoTime();
+            OtpMatch match = template.apply(messageText);
+            if (match != null) {
+                ExtractionMetrics.getInstance().recordTemplateHit(match.getPatternIndex(), System.nanoTime() - startNanos);
+                return match;
+            }
+        }
+
+        OtpMatch match = OtpExtractor.findAcceptedOtp(messageText);
+        // Only built-in formats are learned; user rules may group or anchor codes differently
+        if (match != null && match.getPatternIndex() <= OtpScanner.PATTERN_COUNT) {
+            Template learned = Template.learn(match, messageText);
+            synchronized (templates) {
+                // Rules that changed during the scan may not have produced this match
+                if (generation == rulesGeneration) {
+                    templates.put(serviceId, learned);
+                }
+            }
+        }
+        return match;
+    }
+
+    /**
+     * @return Number of senders with a learned template
+     */
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    /**
+     * Forget all learned templates
+     */
+    public void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    private static final class Template {
+        private final int patternIndex;
+        private final int start;
+        private final int codeEnd;
+        // Length of the run of code characters starting at start; longer than the code when it was capped
+        private final int runLength;
+        // Whether a word character follows the run; decides e.g. standalone vs leading digits
+        private final boolean wordAfter;
+        private final int anchorLength;
+        private final long anchorHash;
+
+        private Template(int patternIndex, int start, int codeEnd, int runLength, boolean wordAfter,
+                         int anchorLength, long anchorHash) {
+            this.patternIndex = patternIndex;
+            this.start = start;
+            this.codeEnd = codeEnd;
+            this.runLength = runLength;
+            this.wordAfter = wordAfter;
+            this.anchorLength = anchorLength;
+            this.anchorHash = anchorHash;
+        }
+
+        static Template learn(OtpMatch match, CharSequence text) {
+            int patternIndex = match.getPatternIndex();
+            int start = match.getStart();
+            int runLength = patternIndex == OtpScanner.PATTERN_SPLIT_NUMERIC
+                    ? match.getEnd() - start
+                    : runLength(text, start, patternIndex);
+            int anchorLength = Math.min(start, ANCHOR_LENGTH);
+            return new Template(patternIndex, start, match.getEnd(), runLength, isWordAfter(text, start + runLength),
+                    anchorLength, hash(text, start - anchorLength, start));
+        }
+
+        OtpMatch apply(CharSequence text) {
+            int length = text.length();
+            if (start + runLength > length) {
+                return null;
+            }
+            if (patternIndex == OtpScanner.PATTERN_SPLIT_NUMERIC) {
+                if (!isSplit(text, start) || (codeEnd < length && isCodeChar(text.charAt(codeEnd), patternIndex))) {
+                    return null;
+                }
+            } else if (runLength(text, start, patternIndex) != runLength) {
+                return null;
+            }
+            if (isWordAfter(text, start + runLength) != wordAfter
+                    || hash(text, start - anchorLength, start) != anchorHash) {
+                return null;
+            }
+
+            String code;
+            if (patternIndex == OtpScanner.PATTERN_SPLIT_NUMERIC) {
+                char[] digits = new char[6];
+                for (int k = 0; k < 3; k++) {
+                    digits[k] = DigitFolding.fold(text.charAt(start + k));
+                    digits[3 + k] = DigitFolding.fold(text.charAt(start + 4 + k));
+                }
+                code = new String(digits);
+            } else {
+                code = OtpScanner.copy(text, start, codeEnd);
+            }
+            return new OtpMatch(code, patternIndex, start, codeEnd);
+        }
+
+        private static boolean isSplit(CharSequence text, int from) {
+            for (int k = 0; k < 7; k++) {
+                char c = text.charAt(from + k);
+                boolean ok = k == 3 ? (c == ' ' || c == '-' || (c >= '\t' && c <= '\r')) : DigitFolding.isDigit(c);
+                if (!ok) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isWordAfter(CharSequence text, int position) {
+            return position < text.length() && OtpScanner.isWordAt(text, position);
+        }
+
+        private static int runLength(CharSequence text, int from, int patternIndex) {
+            int i = from;
+            int length = text.length();
+            while (i < length && isCodeChar(text.charAt(i), patternIndex)) {
+                i++;
+            }
+            return i - from;
+        }
+
+        private static boolean isCodeChar(char c, int patternIndex) {
+            if (DigitFolding.isDigit(c)) {
+                return true;
+            }
+            return patternIndex == OtpScanner.PATTERN_KEYWORD_ALPHANUMERIC
+                    && ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'));
+        }
+
+        private static long hash(CharSequence text, int from, int to) {
+            long hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = hash * 31 + text.charAt(i);
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.snagotp.core;
+
+import java.security.SecureRandom;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide ring of the most recent message-handling events, for diagnosing what happened to a message
+ * An event is a type, a timestamp, a pattern number, two lengths and a redacted hash; recording writes only
+ * primitives, takes no lock and allocates nothing, so it can stay on for every message
+ * No text is kept: hashes are salted per process and truncated, so an exported trace can link events
+ * about the same message or code without revealing either, even for a short numeric OTP
+ * Writers claim slots from one atomic counter; each slot carries a stamp that readers check before and
+ * after copying it, so a slot being overwritten is skipped rather than read torn
+ */
+public final class TraceBuffer {
+    /** Number of events kept */
+    public static final int CAPACITY = 1024;
+
+    /** A message reached the pipeline; length: message chars, value: source, hash: message */
+    public static final int MESSAGE_RECEIVED = 1;
+    /** The prefilter rejected a message; length: message chars */
+    public static final int PREFILTER_REJECTED = 2;
+    /** A message seen recently was dropped; length: message chars, hash: message */
+    public static final int DUPLICATE_DROPPED = 3;
+    /** An OTP was extracted; pattern, length: message chars, value: code chars, hash: message */
+    public static final int OTP_EXTRACTED = 4;
+    /** No OTP was found; length: message chars, hash: message */
+    public static final int NO_OTP = 5;
+    /** The code was copied recently and the clipboard was left alone; value: code chars, hash: code */
+    public static final int CODE_REPEATED = 6;
+    /** A code was written to the clipboard; value: code chars, hash: code */
+    public static final int CLIPBOARD_WRITTEN = 7;
+    /** A clipboard write failed; value: code chars, hash: code */
+    public static final int CLIPBOARD_FAILED = 8;
+    /** A part of a multipart SMS arrived on its own; length: part chars, value: part number */
+    public static final int PART_RECEIVED = 9;
+    /** A late message's code went to history but not the clipboard; value: code chars, hash: code */
+    public static final int LATE_NOT_COPIED = 10;
+
+    private static final String[] TYPE_NAMES = {
+        "?", "received", "prefiltered", "duplicate", "extracted", "no-otp",
+        "repeated", "copied", "copy-failed", "part", "late"
+    };
+
+    private static final TraceBuffer INSTANCE = new TraceBuffer();
+
+    private static final int MASK = CAPACITY - 1;
+    // Per slot: stamp (sequence + 1 once written, BUSY while being written), timestamp, packed fields, hash
+    private static final int WORDS = 4;
+    private static final long BUSY = -1;
+    private static final int FIELD_BITS = 24;
+    private static final int FIELD_MAX = (1 << FIELD_BITS) - 1;
+
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLongArray slots = new AtomicLongArray(CAPACITY * WORDS);
+    private final long salt = new SecureRandom().nextLong();
+
+    private TraceBuffer() {
+    }
+
+    /**
+     * @return The shared trace buffer
+     */
+    public static TraceBuffer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record an event
+     *
+     * @param type One of the event constants
+     * @param patternIndex Pattern that matched, or 0
+     * @param length Message or part length, or 0
+     * @param value Type-specific value, or 0
+     * @param hash Unredacted fingerprint of the message or code, or 0; only its redacted form is stored
+     */
+    public void record(int type, int patternIndex, int length, int value, long hash) {
+        long packed = ((long) (type & 0xff) << 56)
+                | ((long) (patternIndex & 0xff) << 48)
+                | (clamp(length) << FIELD_BITS)
+                | clamp(value);
+        long sequence = cursor.getAndIncrement();
+        int base = (int) (sequence & MASK) * WORDS;
+        slots.set(base, BUSY);
+        slots.set(base + 1, System.currentTimeMillis());
+        slots.set(base + 2, packed);
+        slots.set(base + 3, redact(hash));
+        slots.set(base, sequence + 1);
+    }
+
+    /**
+     * @return Number of events recorded since the process started, including those overwritten
+     */
+    public long getRecordedCount() {
+        return cursor.get();
+    }
+
+    /**
+     * Format the buffered events, oldest first, one per line
+     * Events being written at the time are left out
+     *
+     * @return The trace as text
+     */
+    public String dump() {
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        StringBuilder builder = new StringBuilder();
+        long end = cursor.get();
+        for (long sequence = Math.max(0, end - CAPACITY); sequence < end; sequence++) {
+            int base = (int) (sequence & MASK) * WORDS;
+            if (slots.get(base) != sequence + 1) {
+                continue;
+            }
+            long timestamp = slots.get(base + 1);
+            long packed = slots.get(base + 2);
+            long hash = slots.get(base + 3);
+            if (slots.get(base) != sequence + 1) {
+                continue;
+            }
+
+            int type = (int) (packed >>> 56);
+            builder.append(format.format(new Date(timestamp)))
+                    .append(' ').append(type < TYPE_NAMES.length ? TYPE_NAMES[type] : TYPE_NAMES[0]);
+            int patternIndex = (int) (packed >>> 48) & 0xff;
+            if (patternIndex != 0) {
+                builder.append(" pattern=").append(patternIndex);
+            }
+            builder.append(" len=").append((packed >>> FIELD_BITS) & FIELD_MAX)
+                    .append(" val=").append(packed & FIELD_MAX);
+            if (hash != 0) {
+                builder.append(" hash=").append(String.format(Locale.US, "%08x", hash));
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static long clamp(int field) {
+        return Math.max(0, Math.min(field, FIELD_MAX));
+    }
+
+    // 32 bits of a salted mix; 0 stays 0 so "no hash" is still recognisable
+    private long redact(long hash) {
+        if (hash == 0) {
+            return 0;
+        }
+        long z = hash ^ salt;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        z ^= z >>> 31;
+        return (z >>> 32) | 1;
+    }
+}
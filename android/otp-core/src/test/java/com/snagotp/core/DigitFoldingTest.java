@@ -0,0 +1,106 @@
+package com.snagotp.core;
+
+import static com.snagotp.core.TestMessages.describe;
+import static com.snagotp.core.TestMessages.tokenSoup;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Native-script digits fold to ASCII per script, and a message written in any supported script
+ * scans exactly like its ASCII form
+ */
+public class DigitFoldingTest {
+    // Zero of each supported script, named for failure messages
+    private static final char[] ZEROS = {
+        '0', '٠', '۰', '०', '০', '੦', '૦', '୦', '௦', '౦', '೦',
+        '൦', '０'
+    };
+    private static final String[] SCRIPTS = {
+        "ASCII", "Arabic-Indic", "Extended Arabic-Indic", "Devanagari", "Bengali", "Gurmukhi", "Gujarati",
+        "Oriya", "Tamil", "Telugu", "Kannada", "Malayalam", "Full-width"
+    };
+
+    @Test
+    public void foldsEachScript() {
+        for (int s = 0; s < ZEROS.length; s++) {
+            for (int value = 0; value < 10; value++) {
+                char c = (char) (ZEROS[s] + value);
+                assertTrue(SCRIPTS[s] + " " + value, DigitFolding.isDigit(c));
+                assertEquals(SCRIPTS[s] + " " + value, (char) ('0' + value), DigitFolding.fold(c));
+                // Agrees with the platform's idea of the digit
+                assertEquals(SCRIPTS[s] + " " + value, value, Character.digit(c, 10));
+            }
+            assertFalse(SCRIPTS[s] + " before zero", DigitFolding.isDigit((char) (ZEROS[s] - 1)));
+            assertFalse(SCRIPTS[s] + " after nine", DigitFolding.isDigit((char) (ZEROS[s] + 10)));
+        }
+    }
+
+    @Test
+    public void recognisesOnlySupportedScripts() {
+        int digits = 0;
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            if (DigitFolding.isDigit((char) c)) {
+                digits++;
+                assertTrue(Integer.toHexString(c), Character.isDigit((char) c));
+            } else {
+                assertEquals(Integer.toHexString(c), (char) c, DigitFolding.fold((char) c));
+            }
+        }
+        assertEquals(ZEROS.length * 10, digits);
+    }
+
+    @Test
+    public void foldsCodes() {
+        String ascii = "482913";
+        assertSame(ascii, DigitFolding.fold(ascii));
+        assertEquals("482913", DigitFolding.fold("४८२९१३"));
+        assertEquals("AB12", DigitFolding.fold("AB１２"));
+        assertEquals("", DigitFolding.fold(""));
+    }
+
+    @Test
+    public void scansNativeDigitsLikeAscii() {
+        assertScan("Your OTP is ४८२९१३", 1, "482913");
+        assertScan("رمز التحقق: ٤٨٢٩", 1, "4829");
+        assertScan("Enter ১২৩-৪৫৬ now", 4, "123456");
+        assertScan("４８２９１３ is yours", 2, "482913");
+    }
+
+    @Test
+    public void transliteratedMessagesScanLikeAscii() {
+        String[] tokens = {
+            "otp", "code", "pin", "is", " ", "-", ":", "x", "AB", "1", "12", "123", "1234", "123456", "1234567890",
+            "123-456", "123 456"
+        };
+        Random random = new Random(4);
+        for (int t = 0; t < 20000; t++) {
+            String ascii = tokenSoup(random, tokens, 10);
+            String expected = describe(OtpScanner.scan(ascii));
+            for (int s = 1; s < ZEROS.length; s++) {
+                String message = transliterate(ascii, ZEROS[s]);
+                assertEquals(SCRIPTS[s] + ": " + message, expected, describe(OtpScanner.scan(message)));
+            }
+        }
+    }
+
+    private static void assertScan(String message, int patternIndex, String code) {
+        OtpMatch match = OtpScanner.scan(message);
+        assertEquals(message, patternIndex + ":" + code,
+                match == null ? null : match.getPatternIndex() + ":" + match.getCode());
+    }
+
+    private static String transliterate(String ascii, char zero) {
+        char[] chars = ascii.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= '0' && chars[i] <= '9') {
+                chars[i] = (char) (zero + (chars[i] - '0'));
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,233 @@
+package com.snagotp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Paged backfill over a fake message store: resume from the checkpoint, cancellation, and a checkpoint
+ * that never moves past OTPs the sink has not durably stored
+ */
+public class InboxBackfillTest {
+    private static final int PAGE_SIZE = 4;
+
+    @Test
+    public void findsEveryOtpInIdOrder() throws IOException {
+        FakeSource source = new FakeSource(10);
+        FakeCheckpoint checkpoint = new FakeCheckpoint();
+        FakeSink sink = new FakeSink();
+        InboxBackfill backfill = backfill(source, checkpoint, sink);
+
+        assertTrue(backfill.run());
+        assertEquals(expectedCodes(1, 10), sink.committed);
+        assertEquals(10, checkpoint.lastId);
+        assertEquals(10, backfill.getScannedCount());
+        assertEquals(5, backfill.getFoundCount());
+        // 10 messages in pages of 4; a short page ends the run without another read
+        assertEquals(3, source.reads);
+    }
+
+    @Test
+    public void resumesAfterTheCheckpoint() throws IOException {
+        FakeSource source = new FakeSource(10);
+        FakeCheckpoint checkpoint = new FakeCheckpoint();
+        checkpoint.lastId = 4;
+        FakeSink sink = new FakeSink();
+
+        assertTrue(backfill(source, checkpoint, sink).run());
+        assertEquals(expectedCodes(5, 10), sink.committed);
+        assertEquals(4, source.firstAfterId);
+
+        // Nothing new: one empty read and no OTPs
+        FakeSink again = new FakeSink();
+        assertTrue(backfill(source, checkpoint, again).run());
+        assertTrue(again.committed.isEmpty());
+        assertEquals(10, checkpoint.lastId);
+    }
+
+    @Test
+    public void cancelStopsAfterTheCurrentPage() throws IOException {
+        FakeSource source = new FakeSource(20);
+        FakeCheckpoint checkpoint = new FakeCheckpoint();
+        final FakeSink sink = new FakeSink();
+        final InboxBackfill backfill = backfill(source, checkpoint, sink);
+        sink.onCommit = new Runnable() {
+            @Override
+            public void run() {
+                backfill.cancel();
+            }
+        };
+
+        assertFalse(backfill.run());
+        assertTrue(backfill.isCancelled());
+        assertEquals(PAGE_SIZE, checkpoint.lastId);
+
+        FakeSink rest = new FakeSink();
+        assertTrue(backfill(source, checkpoint, rest).run());
+        assertEquals(expectedCodes(PAGE_SIZE + 1, 20), rest.committed);
+    }
+
+    @Test
+    public void checkpointStaysBeforeUncommittedPage() throws IOException {
+        FakeSource source = new FakeSource(12);
+        FakeCheckpoint checkpoint = new FakeCheckpoint();
+        FakeSink sink = new FakeSink();
+        // Second page's OTPs were handed on but may not have reached disk
+        sink.failCommitAt = 2;
+
+        try {
+            backfill(source, checkpoint, sink).run();
+            fail("Uncommitted page was checkpointed");
+        } catch (IOException expected) {
+            // Reported so the run can be retried
+        }
+        assertEquals(PAGE_SIZE, checkpoint.lastId);
+
+        // The next run starts again at the page that was not committed
+        FakeSink retry = new FakeSink();
+        assertTrue(backfill(source, checkpoint, retry).run());
+        assertEquals(expectedCodes(PAGE_SIZE + 1, 12), retry.committed);
+        assertEquals(12, checkpoint.lastId);
+    }
+
+    @Test
+    public void checkpointStaysBeforeRefusedOtp() throws IOException {
+        FakeSource source = new FakeSource(12);
+        FakeCheckpoint checkpoint = new FakeCheckpoint();
+        FakeSink sink = new FakeSink();
+        // Message 6 carries an OTP the sink cannot store, e.g. a journal queue that stayed full
+        sink.refuseId = 6;
+
+        try {
+            backfill(source, checkpoint, sink).run();
+            fail("Page with a refused OTP was checkpointed");
+        } catch (IOException expected) {
+            // Reported so the run can be retried
+        }
+        assertEquals(PAGE_SIZE, checkpoint.lastId);
+        assertFalse(sink.handed.contains("6"));
+
+        FakeSink retry = new FakeSink();
+        assertTrue(backfill(source, checkpoint, retry).run());
+        assertEquals(expectedCodes(PAGE_SIZE + 1, 12), retry.committed);
+    }
+
+    @Test
+    public void rejectsIdsOutOfOrder() {
+        FakeSource source = new FakeSource(8);
+        source.rewindAfterFirstPage = true;
+        FakeCheckpoint checkpoint = new FakeCheckpoint();
+        try {
+            backfill(source, checkpoint, new FakeSink()).run();
+            fail("Ids out of order were accepted");
+        } catch (IOException expected) {
+            // The store is not paging by id
+        }
+        assertEquals(PAGE_SIZE, checkpoint.lastId);
+    }
+
+    private static InboxBackfill backfill(FakeSource source, FakeCheckpoint checkpoint, FakeSink sink) {
+        return new InboxBackfill(source, checkpoint, sink, new BatchExtractor(), PAGE_SIZE);
+    }
+
+    // Even ids carry an OTP derived from the id, odd ids are chatter
+    private static String body(long id) {
+        return id % 2 == 0 ? "Your OTP is " + code(id) : "See you at " + (id % 12 + 1) + " tomorrow";
+    }
+
+    private static String code(long id) {
+        return String.valueOf(100000 + id);
+    }
+
+    private static List<String> expectedCodes(long fromId, long toId) {
+        List<String> codes = new ArrayList<>();
+        for (long id = fromId; id <= toId; id++) {
+            if (id % 2 == 0) {
+                codes.add(code(id));
+            }
+        }
+        return codes;
+    }
+
+    private static final class FakeSource implements InboxBackfill.Source {
+        private final int messageCount;
+        int reads;
+        long firstAfterId = -1;
+        boolean rewindAfterFirstPage;
+
+        FakeSource(int messageCount) {
+            this.messageCount = messageCount;
+        }
+
+        @Override
+        public List<MessageRecord> readPage(long afterId, int limit) {
+            if (firstAfterId < 0) {
+                firstAfterId = afterId;
+            }
+            if (rewindAfterFirstPage && reads > 0) {
+                afterId = 0;
+            }
+            reads++;
+            List<MessageRecord> page = new ArrayList<>();
+            for (long id = afterId + 1; id <= messageCount && page.size() < limit; id++) {
+                page.add(new MessageRecord(id, "AX-HDFCBK", body(id), id * 1000));
+            }
+            return page;
+        }
+    }
+
+    private static final class FakeCheckpoint implements InboxBackfill.Checkpoint {
+        long lastId;
+
+        @Override
+        public long load() {
+            return lastId;
+        }
+
+        @Override
+        public void save(long lastId) {
+            this.lastId = lastId;
+        }
+    }
+
+    private static final class FakeSink implements InboxBackfill.Sink {
+        final List<String> handed = new ArrayList<>();
+        final List<String> committed = new ArrayList<>();
+        private final List<String> uncommitted = new ArrayList<>();
+        long refuseId = -1;
+        int failCommitAt = -1;
+        Runnable onCommit;
+        private int commits;
+
+        @Override
+        public boolean onOtp(MessageRecord message, OtpMatch match) {
+            if (message.getId() == refuseId) {
+                return false;
+            }
+            handed.add(String.valueOf(message.getId()));
+            uncommitted.add(match.getCode());
+            return true;
+        }
+
+        @Override
+        public boolean commit() {
+            commits++;
+            if (commits == failCommitAt) {
+                uncommitted.clear();
+                return false;
+            }
+            committed.addAll(uncommitted);
+            uncommitted.clear();
+            if (onCommit != null) {
+                onCommit.run();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.snagotp.core;
+
+import static com.snagotp.core.TestMessages.tokenSoup;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Keyword hits reported by the automaton, checked against a naive search that folds case the same way
+ */
+public class KeywordIndexTest {
+    // Masks OtpScanner gives its keywords: code keywords anchor patterns 1 and 3, PIN keywords only 1
+    private static final long CODE = 3;
+    private static final long PIN = 1;
+
+    @Test
+    public void findsOverlappingKeywords() {
+        KeywordIndex index = KeywordIndex.compile(Arrays.asList("he", "she", "his", "hers"),
+                new long[] {1, 2, 4, 8});
+        // "she" and "he" both end at offset 4, "hers" at 6
+        assertEquals("4:3 6:8", hits(index, "ushers"));
+        assertEquals("3:4", hits(index, "his"));
+    }
+
+    @Test
+    public void duplicateKeywordsReportTheUnionOfTheirMasks() {
+        KeywordIndex index = KeywordIndex.compile(Arrays.asList("pin", "PIN"), new long[] {1, 4});
+        assertEquals("3:5", hits(index, "pin"));
+    }
+
+    @Test
+    public void findsScannerKeywordsInEveryScript() {
+        KeywordIndex index = scannerIndex();
+        assertEquals("7:" + CODE, hits(index, "Ваш КОД: 1234"));
+        assertEquals("8:" + CODE, hits(index, "आपका कोड 1234"));
+        assertEquals("5:" + CODE, hits(index, "您的验证码是"));
+        assertEquals("6:" + CODE, hits(index, "CÓDIGO 1234"));
+        assertEquals("10:" + PIN, hits(index, "Contraseña"));
+        assertEquals("4:" + CODE, hits(index, "인증번호 1234"));
+        assertEquals("", hits(index, "Your order has shipped"));
+    }
+
+    @Test
+    public void foldsCaseOneCharAtATime() {
+        KeywordIndex index = scannerIndex();
+        // Turkish capital dotted I folds to ASCII 'i' char by char, unlike String.toLowerCase
+        assertEquals('i', KeywordIndex.foldCase('İ'));
+        assertEquals("5:" + PIN, hits(index, "ŞİFRE"));
+        assertEquals("3:" + PIN, hits(index, "PİN"));
+        // Dotless i stays distinct
+        assertEquals("", hits(index, "pın"));
+        // Kelvin sign folds to 'k'
+        assertEquals("3:" + CODE, hits(index, "\u212AOD"));
+    }
+
+    @Test
+    public void matchesNaiveSearchOnRandomText() {
+        List<String> keywords = OtpScanner.numericKeywords();
+        long[] masks = scannerMasks(keywords);
+        KeywordIndex index = KeywordIndex.compile(keywords, masks);
+        String[] tokens = {
+            "o", "t", "p", "c", "O", "D", "e", "pin", "PI", "ver", "ify", "ication", "KOD", "ко", "Д",
+            "को", "ड", "验证", "码", "ŞİF", "re", "İ", "ı", "contraseÑa", "sen", "ha", " ", "1", "-"
+        };
+        Random random = new Random(3);
+        for (int t = 0; t < 100000; t++) {
+            String text = tokenSoup(random, tokens, 12);
+            assertEquals(text, naiveHits(keywords, masks, text), hits(index, text));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMismatchedMasks() {
+        KeywordIndex.compile(Arrays.asList("otp", "code"), new long[] {1});
+    }
+
+    private static KeywordIndex scannerIndex() {
+        List<String> keywords = OtpScanner.numericKeywords();
+        return KeywordIndex.compile(keywords, scannerMasks(keywords));
+    }
+
+    private static long[] scannerMasks(List<String> keywords) {
+        List<String> codeKeywords = OtpScanner.alphanumericKeywords();
+        long[] masks = new long[keywords.size()];
+        for (int k = 0; k < masks.length; k++) {
+            masks[k] = codeKeywords.contains(keywords.get(k)) ? CODE : PIN;
+        }
+        return masks;
+    }
+
+    // "end:mask" for every offset where at least one keyword ends
+    private static String hits(KeywordIndex index, String text) {
+        StringBuilder result = new StringBuilder();
+        int state = KeywordIndex.ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = index.step(state, text.charAt(i));
+            long mask = index.getMask(state);
+            if (mask != 0) {
+                append(result, i + 1, mask);
+            }
+        }
+        return result.toString();
+    }
+
+    private static String naiveHits(List<String> keywords, long[] masks, String text) {
+        StringBuilder result = new StringBuilder();
+        for (int end = 1; end <= text.length(); end++) {
+            long mask = 0;
+            for (int k = 0; k < masks.length; k++) {
+                if (endsWithFolded(text, end, keywords.get(k))) {
+                    mask |= masks[k];
+                }
+            }
+            if (mask != 0) {
+                append(result, end, mask);
+            }
+        }
+        return result.toString();
+    }
+
+    private static boolean endsWithFolded(String text, int end, String keyword) {
+        int start = end - keyword.length();
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (KeywordIndex.foldCase(text.charAt(start + i)) != KeywordIndex.foldCase(keyword.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void append(StringBuilder result, int end, long mask) {
+        if (result.length() > 0) {
+            result.append(' ');
+        }
+        result.append(end).append(':').append(mask);
+    }
+}
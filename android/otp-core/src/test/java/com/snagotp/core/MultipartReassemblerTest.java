@@ -0,0 +1,126 @@
+package com.snagotp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Parts are released early only when the prefix settles the OTP, at most once per message; incomplete
+ * messages come back from drainExpired once their timeout passes or they are evicted
+ */
+public class MultipartReassemblerTest {
+    private static final String SENDER = "AX-HDFCBK";
+    private static final long TIMEOUT = 60000;
+
+    @After
+    public void clearRules() {
+        OtpExtractor.setCustomRules(null);
+    }
+
+    @Test
+    public void releasesCompleteMessageInAnyOrder() {
+        MultipartReassembler reassembler = new MultipartReassembler(4, TIMEOUT);
+        assertNull(add(reassembler, 7, 3, 3, " with us.", 0));
+        assertNull(add(reassembler, 7, 3, 1, "Your balance is ", 10));
+        MultipartReassembler.Message message = add(reassembler, 7, 3, 2, "Rs 1200", 20);
+        assertTrue(message.isComplete());
+        assertEquals("Your balance is Rs 1200 with us.", message.getText().toString());
+        assertEquals(SENDER, message.getSender());
+        assertEquals(0, reassembler.size());
+    }
+
+    @Test
+    public void releasesSettledPrefixOnce() {
+        MultipartReassembler reassembler = new MultipartReassembler(4, TIMEOUT);
+        MultipartReassembler.Message early = add(reassembler, 7, 2, 1, "Your OTP is 482913. Do not share it", 0);
+        assertFalse(early.isComplete());
+        assertEquals("482913", OtpExtractor.extractOtp(early.getText()));
+
+        // The rest neither releases the message again nor leaves it to expire
+        assertNull(add(reassembler, 7, 2, 2, " with anyone.", 10));
+        assertEquals(0, reassembler.size());
+        assertTrue(reassembler.drainExpired(TIMEOUT * 2).isEmpty());
+    }
+
+    @Test
+    public void waitsWhenTheNextPartCouldExtendTheCode() {
+        MultipartReassembler reassembler = new MultipartReassembler(4, TIMEOUT);
+        // The code ends the part, so part 2 may carry more digits
+        assertNull(add(reassembler, 7, 2, 1, "Your OTP is 4829", 0));
+        MultipartReassembler.Message message = add(reassembler, 7, 2, 2, "13. Do not share it.", 10);
+        assertTrue(message.isComplete());
+        assertEquals("482913", OtpExtractor.extractOtp(message.getText()));
+    }
+
+    @Test
+    public void waitsForTheFirstPart() {
+        MultipartReassembler reassembler = new MultipartReassembler(4, TIMEOUT);
+        assertNull(add(reassembler, 7, 2, 2, "Your OTP is 482913. Do not share it.", 0));
+        assertNull(add(reassembler, 7, 2, 2, "Your OTP is 482913. Do not share it.", 5));
+        assertEquals(1, reassembler.size());
+    }
+
+    @Test
+    public void isFinalOnlyForKeywordCodesFollowedByText() {
+        String prefix = "Your OTP is 482913. Ref 5555";
+        assertTrue(MultipartReassembler.isFinal(OtpExtractor.findOtp(prefix), prefix));
+        // Could grow in the next part
+        assertFalse(MultipartReassembler.isFinal(OtpExtractor.findOtp("Your OTP is 4829"), "Your OTP is 4829"));
+        // A standalone number can still be outranked by a keyword code in a later part
+        assertFalse(MultipartReassembler.isFinal(OtpExtractor.findOtp("Ref 482913 for"), "Ref 482913 for"));
+        assertFalse(MultipartReassembler.isFinal(null, prefix));
+    }
+
+    @Test
+    public void userRulesDisableEarlyRelease() {
+        OtpExtractor.setCustomRules(Collections.singletonList(new OtpRule("Ref", 5, OtpRule.Anchor.KEYWORD,
+                Collections.singletonList("ref"), OtpRule.Charset.DIGITS, 4, 4, 0, null)));
+        String prefix = "Your OTP is 482913. Do not share it";
+        assertFalse(MultipartReassembler.isFinal(OtpExtractor.findOtp(prefix), prefix));
+
+        MultipartReassembler reassembler = new MultipartReassembler(4, TIMEOUT);
+        assertNull(add(reassembler, 7, 2, 1, prefix, 0));
+        MultipartReassembler.Message message = add(reassembler, 7, 2, 2, ". Ref 5555", 10);
+        assertTrue(message.isComplete());
+        assertEquals("5555", OtpExtractor.extractOtp(message.getText()));
+    }
+
+    @Test
+    public void drainsIncompleteMessagesOnceTheirTimeoutPasses() {
+        MultipartReassembler reassembler = new MultipartReassembler(4, TIMEOUT);
+        assertEquals(Long.MAX_VALUE, reassembler.nextExpiryMillis());
+        add(reassembler, 7, 3, 1, "Your OTP is 4829", 1000);
+        add(reassembler, 8, 2, 2, "later message", 5000);
+        assertEquals(1000 + TIMEOUT, reassembler.nextExpiryMillis());
+
+        assertTrue(reassembler.drainExpired(1000 + TIMEOUT - 1).isEmpty());
+        List<MultipartReassembler.Message> drained = reassembler.drainExpired(1000 + TIMEOUT);
+        assertEquals(1, drained.size());
+        assertFalse(drained.get(0).isComplete());
+        assertEquals("Your OTP is 4829", drained.get(0).getText().toString());
+        assertEquals(5000 + TIMEOUT, reassembler.nextExpiryMillis());
+    }
+
+    @Test
+    public void drainsEvictedMessages() {
+        MultipartReassembler reassembler = new MultipartReassembler(2, TIMEOUT);
+        add(reassembler, 1, 2, 1, "first", 0);
+        add(reassembler, 2, 2, 1, "second", 10);
+        add(reassembler, 3, 2, 1, "third", 20);
+        assertEquals(2, reassembler.size());
+        List<MultipartReassembler.Message> drained = reassembler.drainExpired(30);
+        assertEquals(1, drained.size());
+        assertEquals("first", drained.get(0).getText().toString());
+    }
+
+    private static MultipartReassembler.Message add(MultipartReassembler reassembler, int reference, int partCount,
+            int partNumber, String text, long now) {
+        return reassembler.add(SENDER, new ConcatenatedSmsHeader(reference, partCount, partNumber), text, now, now);
+    }
+}
@@ -0,0 +1,93 @@
+package com.snagotp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Row columns and the sender intern table: senders are shared between rows and released with
+ * their last row, so the table does not outgrow the ring
+ */
+public class OtpHistoryRingTest {
+    @Test
+    public void rowsRoundTrip() {
+        OtpHistoryRing ring = new OtpHistoryRing(4);
+        int packed = ring.append("004213", "AX-HDFCBK", 1000, 3, 42);
+        int unpacked = ring.append("AB12CD", null, 2000, 7, 43);
+
+        assertEquals("004213", ring.getCode(packed));
+        assertEquals("AX-HDFCBK", ring.getSender(packed));
+        assertEquals(1000, ring.getTimestampMillis(packed));
+        assertEquals(3, ring.getPatternIndex(packed));
+        assertEquals(42, ring.getMessageHash(packed));
+        assertEquals("AB12CD", ring.getCode(unpacked));
+        assertEquals(OtpHistoryRing.NO_SENDER, ring.getSenderHandle(unpacked));
+        assertEquals(null, ring.getSender(unpacked));
+    }
+
+    @Test
+    public void sendersAreSharedBetweenRows() {
+        OtpHistoryRing ring = new OtpHistoryRing(8);
+        int first = ring.append("111111", new String("AX-HDFCBK"), 1, 1, 1);
+        ring.append("222222", "VM-AMAZON", 2, 1, 2);
+        int third = ring.append("333333", new String("AX-HDFCBK"), 3, 1, 3);
+
+        assertEquals(2, ring.getSenderCount());
+        assertEquals(ring.getSenderHandle(first), ring.getSenderHandle(third));
+        assertSame(ring.getSender(first), ring.getSender(third));
+    }
+
+    @Test
+    public void senderTableStaysWithinCapacity() {
+        OtpHistoryRing ring = new OtpHistoryRing(50);
+        for (int i = 0; i < 100000; i++) {
+            // Every other row from one frequent sender, the rest from one-off senders
+            String sender = i % 2 == 0 ? "AX-HDFCBK" : "+91" + (9800000000L + i);
+            ring.append("123456", sender, i, 1, i);
+            assertTrue(ring.getSenderCount() <= ring.getCapacity());
+        }
+        assertEquals(26, ring.getSenderCount());
+        for (int sequence = ring.getFirstSequence(); sequence < ring.getEndSequence(); sequence++) {
+            String expected = sequence % 2 == 0 ? "AX-HDFCBK" : "+91" + (9800000000L + sequence);
+            assertEquals(expected, ring.getSender(sequence));
+            assertEquals(expected, ring.getSenderName(ring.getSenderHandle(sequence)));
+        }
+    }
+
+    @Test
+    public void senderOfOverwrittenRowIsReleased() {
+        OtpHistoryRing ring = new OtpHistoryRing(2);
+        int handle = ring.getSenderHandle(ring.append("111111", "Old", 1, 1, 1));
+        ring.append("222222", "Kept", 2, 1, 2);
+        // Overwrites the only row of "Old"
+        ring.append("333333", "Kept", 3, 1, 3);
+        assertEquals(1, ring.getSenderCount());
+        try {
+            ring.getSenderName(handle);
+            fail("Released handle was accepted");
+        } catch (IllegalArgumentException expected) {
+            // Only handles of rows in memory are valid
+        }
+
+        // "Kept" still has a row; the released handle goes to the next new sender
+        int reused = ring.append("444444", "New", 4, 1, 4);
+        assertEquals(handle, ring.getSenderHandle(reused));
+        assertEquals("New", ring.getSenderName(handle));
+        assertEquals("Kept", ring.getSender(reused - 1));
+        assertEquals(2, ring.getSenderCount());
+    }
+
+    @Test
+    public void lastRowOfSenderKeepsHandleWhenRewritten() {
+        OtpHistoryRing ring = new OtpHistoryRing(1);
+        int handle = ring.getSenderHandle(ring.append("111111", "Only", 1, 1, 1));
+        int second = ring.append("222222", "Only", 2, 1, 2);
+
+        assertEquals(handle, ring.getSenderHandle(second));
+        assertEquals("Only", ring.getSender(second));
+        assertEquals(1, ring.getSenderCount());
+    }
+}
@@ -0,0 +1,100 @@
+package com.snagotp.core;
+
+import static com.snagotp.core.TestMessages.tokenSoup;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * The prefilter may let through messages without an OTP, but must never reject one the matcher would
+ * match; checked against OtpRuleMatcher for the built-ins and for seeded random user rules
+ */
+public class OtpPrefilterTest {
+    private static final String[] KEYWORDS = {"ref", "ticket", "code", "pin"};
+    private static final String[] SEPARATORS = {" ", "-", ".", " -.", "/"};
+    private static final String[] TOKENS = {
+        "ref", "Ticket", "code", "PIN", "otp", "is", "a", "x", "AB", "Z9", "é",
+        " ", "-", ".", "/", ":", "\n", "1", "12", "123", "1234", "12345", "123456", "1234567890", "१२३", "٤٥"
+    };
+
+    @Test
+    public void acceptsEveryMessageTheBuiltInsMatch() {
+        assertAcceptsMatches(OtpRule.builtIns(), new Random(5), 200000);
+    }
+
+    @Test
+    public void acceptsEveryMessageUserRulesMatch() {
+        Random random = new Random(6);
+        for (int r = 0; r < 5000; r++) {
+            List<OtpRule> rules = new ArrayList<>();
+            int count = 1 + random.nextInt(3);
+            for (int i = 0; i < count; i++) {
+                rules.add(randomRule(random));
+            }
+            assertAcceptsMatches(rules, random, 200);
+        }
+    }
+
+    @Test
+    public void acceptsLoneGroupOfGroupedRule() {
+        // Groups of 3 and at least 3 digits: one group on its own is a whole code
+        OtpRule rule = new OtpRule("Ref", 5, OtpRule.Anchor.KEYWORD, Collections.singletonList("ref"),
+                OtpRule.Charset.DIGITS, 3, 9, 3, "-");
+        List<OtpRule> rules = Collections.singletonList(rule);
+        assertTrue(OtpRuleMatcher.compile(rules).match("ref 123") != null);
+        assertTrue(OtpPrefilter.compile(rules).accepts("ref 123"));
+        assertFalse(OtpPrefilter.compile(rules).accepts("ref 12"));
+    }
+
+    @Test
+    public void rejectsMessagesWithoutCandidates() {
+        OtpPrefilter prefilter = OtpPrefilter.compile(OtpRule.builtIns());
+        assertFalse(prefilter.accepts("Your order has shipped"));
+        assertFalse(prefilter.accepts("Sale ends at 9 pm, 50% off"));
+        assertFalse(prefilter.accepts("Call 123 now"));
+        assertFalse(prefilter.accepts(""));
+        assertFalse(prefilter.accepts(null));
+        assertTrue(prefilter.accepts("Enter 123-456"));
+    }
+
+    private static void assertAcceptsMatches(List<OtpRule> rules, Random random, int messages) {
+        OtpRuleMatcher matcher = OtpRuleMatcher.compile(rules);
+        OtpPrefilter prefilter = OtpPrefilter.compile(rules);
+        for (int t = 0; t < messages; t++) {
+            String message = tokenSoup(random, TOKENS, 10);
+            if (matcher.match(message) != null) {
+                assertTrue(names(rules) + ": " + message, prefilter.accepts(message));
+            }
+        }
+    }
+
+    private static OtpRule randomRule(Random random) {
+        OtpRule.Anchor anchor = OtpRule.Anchor.values()[random.nextInt(OtpRule.Anchor.values().length)];
+        OtpRule.Charset charset = random.nextBoolean() ? OtpRule.Charset.DIGITS : OtpRule.Charset.ALPHANUMERIC;
+        int minLength = 1 + random.nextInt(8);
+        int maxLength = minLength + random.nextInt(5);
+        int groupSize = anchor != OtpRule.Anchor.START && random.nextBoolean() ? 1 + random.nextInt(4) : 0;
+        String separators = groupSize > 0 ? SEPARATORS[random.nextInt(SEPARATORS.length)] : null;
+        List<String> keywords = Arrays.asList(KEYWORDS[random.nextInt(KEYWORDS.length)],
+                KEYWORDS[random.nextInt(KEYWORDS.length)]);
+        // The name spells the rule out for failure messages
+        String name = anchor + keywords.toString() + " " + charset + " " + minLength + "-" + maxLength
+                + (groupSize > 0 ? " in " + groupSize + "s by '" + separators + "'" : "");
+        return new OtpRule(name, random.nextInt(100), anchor, keywords, charset, minLength, maxLength, groupSize,
+                separators);
+    }
+
+    private static List<String> names(List<OtpRule> rules) {
+        List<String> names = new ArrayList<>();
+        for (OtpRule rule : rules) {
+            names.add(rule.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,110 @@
+package com.snagotp.core;
+
+import static com.snagotp.core.TestMessages.describe;
+import static com.snagotp.core.TestMessages.tokenSoup;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * The built-in rules compiled on their own must behave exactly like OtpScanner; user rules are ranked
+ * by priority, ties keep list order, and a rule's pattern number is its position in the list
+ */
+public class OtpRuleMatcherTest {
+    private static final String[] TOKENS = {
+        "otp", "OTP", "Code", "code", "verification", "verify", "pin", "passcode", "codes", "verifi", "codeotp",
+        "1", "12", "123", "1234", "12345", "123456", "1234567890", "123-456", "123 4567", "९", "١٢٣٤",
+        " ", "-", "_", "\t", ":", "is", "a", "x", "AB12", "é", "क", "ि", "́",
+        "CÓDIGO", "Код", "कोड", "验证码", "コード", "kod", "senha", "ŞİFRE", "인증번호"
+    };
+
+    @Test
+    public void builtInsMatchScannerOnRandomMessages() {
+        OtpRuleMatcher matcher = OtpRuleMatcher.compile(OtpRule.builtIns());
+        Random random = new Random(2);
+        for (int t = 0; t < 200000; t++) {
+            String message = tokenSoup(random, TOKENS, 12);
+            assertEquals(message, describe(OtpScanner.scan(message)), describe(matcher.match(message)));
+        }
+    }
+
+    @Test
+    public void higherPriorityUserRuleWins() {
+        OtpRuleMatcher matcher = OtpRuleMatcher.compile(withUserRules(bankRule(5)));
+        assertEquals("6:123456@13-20", describe(matcher.match("Su código es 123-456 y pin 9999")));
+    }
+
+    @Test
+    public void lowerPriorityUserRuleLoses() {
+        OtpRuleMatcher matcher = OtpRuleMatcher.compile(withUserRules(bankRule(60)));
+        assertEquals("1:9999@27-31", describe(matcher.match("Su código es 123-456 y pin 9999")));
+        // Still used when no built-in matches; '.' is only a separator of the user rule
+        assertEquals("6:123456@13-20", describe(matcher.match("Su código es 123.456")));
+    }
+
+    @Test
+    public void equalPriorityKeepsListOrder() {
+        OtpRule first = new OtpRule("First", 5, OtpRule.Anchor.WORD, null, OtpRule.Charset.DIGITS, 4, 4, 0, null);
+        OtpRule second = new OtpRule("Second", 5, OtpRule.Anchor.KEYWORD, Collections.singletonList("ref"),
+                OtpRule.Charset.DIGITS, 4, 4, 0, null);
+        // Both match; whichever comes first in the list is pattern 6 and wins
+        assertEquals("6:4321@4-8", describe(OtpRuleMatcher.compile(withUserRules(first, second)).match("ref 4321")));
+        assertEquals("6:4321@4-8", describe(OtpRuleMatcher.compile(withUserRules(second, first)).match("ref 4321")));
+    }
+
+    @Test
+    public void overlappingRulesTakeTheBestRankNotTheLeftmostMatch() {
+        // The keyword rule outranks standalone digits, so the later keyword code wins over the earlier number
+        OtpRule rule = new OtpRule("Ticket", 15, OtpRule.Anchor.KEYWORD, Collections.singletonList("ticket"),
+                OtpRule.Charset.ALPHANUMERIC, 6, 6, 0, null);
+        OtpRuleMatcher matcher = OtpRuleMatcher.compile(withUserRules(rule));
+        assertEquals("6:AB12CD@23-29", describe(matcher.match("Call 5555 about ticket AB12CD")));
+        assertEquals("2:5555@5-9", describe(matcher.match("Call 5555 about ticket AB12")));
+    }
+
+    @Test
+    public void userKeywordsIgnoreCaseAndScript() {
+        OtpRule rule = new OtpRule("Acme", 5, OtpRule.Anchor.KEYWORD, Arrays.asList("CLAVE ACME", "验证码"),
+                OtpRule.Charset.DIGITS, 6, 6, 0, null);
+        OtpRuleMatcher matcher = OtpRuleMatcher.compile(withUserRules(rule));
+        assertEquals("6:482913@11-17", describe(matcher.match("Clave Acme 482913")));
+        assertEquals("6:482913@6-12", describe(matcher.match("您的验证码是482913")));
+        assertEquals("6:482913@6-12", describe(matcher.match("您的验证码是४८२९१३")));
+    }
+
+    @Test
+    public void noRuleMatches() {
+        assertNull(OtpRuleMatcher.compile(withUserRules(bankRule(5))).match("Nothing to see here"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyRules() {
+        List<OtpRule> rules = new ArrayList<>();
+        for (int i = 0; i <= OtpRuleMatcher.MAX_RULES; i++) {
+            rules.add(bankRule(i));
+        }
+        OtpRuleMatcher.compile(rules);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsGroupedRuleWithoutSeparators() {
+        new OtpRule("Bad", 5, OtpRule.Anchor.WORD, null, OtpRule.Charset.DIGITS, 6, 6, 3, "");
+    }
+
+    private static OtpRule bankRule(int priority) {
+        return new OtpRule("Bank", priority, OtpRule.Anchor.KEYWORD, Collections.singletonList("código"),
+                OtpRule.Charset.DIGITS, 6, 6, 3, " -.");
+    }
+
+    private static List<OtpRule> withUserRules(OtpRule... rules) {
+        List<OtpRule> all = new ArrayList<>(OtpRule.builtIns());
+        all.addAll(Arrays.asList(rules));
+        return all;
+    }
+}
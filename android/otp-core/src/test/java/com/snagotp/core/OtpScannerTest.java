@@ -0,0 +1,88 @@
+package com.snagotp.core;
+
+import static com.snagotp.core.TestMessages.describe;
+import static com.snagotp.core.TestMessages.tokenSoup;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+/**
+ * Pins OtpScanner to the regex cascade it replaced
+ * The known messages cover each format and its priority; the randomized test replays token soup
+ * through both and requires the same pattern, code and position
+ */
+public class OtpScannerTest {
+    // The original OTP_PATTERNS, in priority order
+    private static final Pattern[] REGEX_CASCADE = {
+        Pattern.compile("(?:OTP|otp|code|verification|verify|pin|passcode)[^0-9]*([0-9]{4,8})",
+                Pattern.CASE_INSENSITIVE),
+        Pattern.compile("\\b([0-9]{4,8})\\b"),
+        Pattern.compile("(?:OTP|otp|code|verification|verify)[^A-Za-z0-9]*([A-Za-z0-9]{4,8})",
+                Pattern.CASE_INSENSITIVE),
+        Pattern.compile("\\b([0-9]{3}[\\s-][0-9]{3})\\b"),
+        Pattern.compile("^([0-9]{6})")
+    };
+
+    // Original keywords and their fragments, digits, separators and non-ASCII word characters;
+    // nothing here spells one of the keywords added later
+    private static final String[] TOKENS = {
+        "otp", "OTP", "Code", "code", "verification", "verify", "pin", "passcode", "PIN", "codes", "verifi",
+        "1", "12", "123", "1234", "12345", "123456", "1234567890", "123-456", "123 4567",
+        " ", "-", "_", "\t", "\n", ":", ".", "is", "a", "x", "AB12", "é", "क", "ि", "́"
+    };
+
+    @Test
+    public void knownMessages() {
+        assertMatch("Your OTP is 482913. Do not share.", 1, "482913");
+        assertMatch("Verification code: 1234", 1, "1234");
+        assertMatch("Your PIN 12 expires, new PIN 5678", 1, "5678");
+        assertMatch("passcode=00420042", 1, "00420042");
+        assertMatch("123456 is your code", 2, "123456");
+        assertMatch("Use 1234 to log in", 2, "1234");
+        assertMatch("Ref 2024 for 12345678901", 2, "2024");
+        assertMatch("Your code: A1B2C3", 3, "A1B2C3");
+        assertMatch("verify: ab12cd34ef", 3, "ab12cd34");
+        assertMatch("Enter 123-456 to continue", 4, "123456");
+        assertMatch("Enter 123 456 to continue", 4, "123456");
+        assertMatch("123456abc is ready", 5, "123456");
+        assertNoMatch("Your order has shipped");
+        assertNoMatch("Call 123 or 12 3456789012");
+        assertNoMatch("");
+    }
+
+    @Test
+    public void matchesRegexCascadeOnRandomMessages() {
+        Random random = new Random(1);
+        for (int t = 0; t < 200000; t++) {
+            String message = tokenSoup(random, TOKENS, 10);
+            assertEquals(message, regexCascade(message), describe(OtpScanner.scan(message)));
+        }
+    }
+
+    private static void assertMatch(String message, int patternIndex, String code) {
+        OtpMatch match = OtpScanner.scan(message);
+        assertEquals(message, patternIndex + ":" + code,
+                match == null ? null : match.getPatternIndex() + ":" + match.getCode());
+        assertEquals(message, regexCascade(message), describe(match));
+    }
+
+    private static void assertNoMatch(String message) {
+        assertNull(message, OtpScanner.scan(message));
+        assertNull(message, regexCascade(message));
+    }
+
+    private static String regexCascade(String message) {
+        for (int i = 0; i < REGEX_CASCADE.length; i++) {
+            Matcher matcher = REGEX_CASCADE[i].matcher(message);
+            if (matcher.find()) {
+                String code = matcher.group(1).replaceAll("[\\s-]", "");
+                return (i + 1) + ":" + code + "@" + matcher.start(1) + "-" + matcher.end(1);
+            }
+        }
+        return null;
+    }
+}
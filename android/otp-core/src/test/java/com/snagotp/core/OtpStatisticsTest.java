@@ -0,0 +1,140 @@
+package com.snagotp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TimeZone;
+import org.junit.Test;
+
+/**
+ * Sender table bound: rare senders give way to new ones and their OTPs move to the other count,
+ * frequent senders keep exact counts, and the bound holds across merge and save and load
+ */
+public class OtpStatisticsTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void topSendersAreOrderedByCount() {
+        OtpStatistics statistics = new OtpStatistics(UTC);
+        record(statistics, "Bank", 5, 0);
+        record(statistics, "Shop", 2, 0);
+        record(statistics, "Mail", 9, 0);
+        record(statistics, "Taxi", 1, 0);
+
+        assertEquals(Arrays.asList("Mail", "Bank", "Shop"), statistics.getTopSenders(3));
+        assertEquals(Arrays.asList("Mail", "Bank", "Shop", "Taxi"), statistics.getTopSenders(10));
+        assertTrue(statistics.getTopSenders(0).isEmpty());
+    }
+
+    @Test
+    public void tableStaysBoundedAndKeepsFrequentSenders() {
+        OtpStatistics statistics = new OtpStatistics(UTC);
+        record(statistics, "Bank", 50, 0);
+        record(statistics, "Mail", 20, 0);
+        // One-off senders, e.g. a different short code for every message
+        for (int i = 0; i < 10 * OtpStatistics.MAX_SENDERS; i++) {
+            record(statistics, "Sender " + i, 1, i);
+        }
+
+        assertEquals(OtpStatistics.MAX_SENDERS, statistics.getSenderTotal());
+        assertEquals(Arrays.asList("Bank", "Mail"), statistics.getTopSenders(2));
+        assertEquals(50, statistics.getSenderCount("Bank"));
+        assertEquals(20, statistics.getSenderCount("Mail"));
+        // The newest one-off sender is still tracked, the oldest ones are not
+        assertEquals(1, statistics.getSenderCount("Sender " + (10 * OtpStatistics.MAX_SENDERS - 1)));
+        assertEquals(0, statistics.getSenderCount("Sender 0"));
+        assertEquals(statistics.getTotal(), senderSum(statistics) + statistics.getOtherSenderCount());
+    }
+
+    @Test
+    public void mergeKeepsTheBound() {
+        OtpStatistics live = new OtpStatistics(UTC);
+        OtpStatistics saved = new OtpStatistics(UTC);
+        for (int i = 0; i < OtpStatistics.MAX_SENDERS; i++) {
+            record(live, "Live " + i, 3, i);
+            record(saved, "Saved " + i, i < 10 ? 5 : 1, i);
+        }
+        live.merge(saved);
+
+        assertEquals(OtpStatistics.MAX_SENDERS, live.getSenderTotal());
+        // Saved senders with more OTPs than any live one replace the weakest, the rest are counted as other
+        assertEquals(5, live.getSenderCount("Saved 0"));
+        assertEquals(0, live.getSenderCount("Saved 10"));
+        assertEquals(live.getTotal(), senderSum(live) + live.getOtherSenderCount());
+    }
+
+    @Test
+    public void savedCountsRoundTrip() throws IOException {
+        OtpStatistics statistics = new OtpStatistics(UTC);
+        record(statistics, "Bank", 4, 1000);
+        for (int i = 0; i < 2 * OtpStatistics.MAX_SENDERS; i++) {
+            record(statistics, "Sender " + i, 1, i);
+        }
+
+        OtpStatistics read = read(write(statistics));
+        assertEquals(statistics.getTotal(), read.getTotal());
+        assertEquals(statistics.getSenderTotal(), read.getSenderTotal());
+        assertEquals(statistics.getOtherSenderCount(), read.getOtherSenderCount());
+        assertEquals(4, read.getSenderCount("Bank"));
+        assertEquals(1000, read.getSenderLastMillis("Bank"));
+        assertEquals(statistics.getTopSenders(5), read.getTopSenders(5));
+    }
+
+    @Test
+    public void unboundedVersionOneFileIsBoundedOnLoad() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int senders = 3 * OtpStatistics.MAX_SENDERS;
+        out.writeInt(0x534f5353);
+        out.writeInt(1);
+        out.writeLong(senders + 99);
+        for (int hour = 0; hour < 24; hour++) {
+            out.writeLong(hour == 0 ? senders + 99 : 0);
+        }
+        out.writeInt(0);
+        out.writeInt(senders);
+        for (int i = 0; i < senders; i++) {
+            out.writeUTF("Sender " + i);
+            out.writeLong(i == senders - 1 ? 100 : 1);
+            out.writeLong(i);
+        }
+        out.flush();
+
+        OtpStatistics read = read(bytes.toByteArray());
+        assertEquals(OtpStatistics.MAX_SENDERS, read.getSenderTotal());
+        assertEquals(100, read.getSenderCount("Sender " + (senders - 1)));
+        assertEquals(read.getTotal(), senderSum(read) + read.getOtherSenderCount());
+    }
+
+    private static void record(OtpStatistics statistics, String sender, int count, long timestampMillis) {
+        for (int i = 0; i < count; i++) {
+            statistics.record(sender, timestampMillis);
+        }
+    }
+
+    private static long senderSum(OtpStatistics statistics) {
+        long sum = 0;
+        for (String sender : statistics.getTopSenders(OtpStatistics.MAX_SENDERS)) {
+            sum += statistics.getSenderCount(sender);
+        }
+        return sum;
+    }
+
+    private static byte[] write(OtpStatistics statistics) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        statistics.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static OtpStatistics read(byte[] bytes) throws IOException {
+        return OtpStatistics.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)), UTC);
+    }
+}
@@ -0,0 +1,44 @@
+package com.snagotp.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Prefix search over senders, and pruning of entries a bounded history has overwritten
+ */
+public class SenderSearchIndexTest {
+    @Test
+    public void findsSendersByServiceAndNationalNumber() {
+        SenderSearchIndex index = new SenderSearchIndex();
+        index.add(1, "AX-HDFCBK");
+        index.add(2, "+919800012345");
+        index.add(3, "VM-HDFCBK-S");
+        index.add(4, null);
+        assertArrayEquals(new int[] {3, 1}, index.search("hdfc", 10));
+        assertArrayEquals(new int[] {1}, index.search("ax", 10));
+        assertArrayEquals(new int[] {2}, index.search("98000", 10));
+        assertArrayEquals(new int[] {4, 3}, index.search("", 2));
+    }
+
+    @Test
+    public void forgetsOverwrittenEntries() {
+        OtpHistoryRing ring = new OtpHistoryRing(50);
+        SenderSearchIndex index = new SenderSearchIndex();
+        for (int i = 0; i < 100000; i++) {
+            String sender = "+91" + (9800000000L + i);
+            int sequence = ring.append("123456", sender, i, 1, i);
+            index.add(sequence, sender);
+            index.removeBefore(ring.getFirstSequence());
+        }
+        // Swept whenever forgotten entries outnumber live ones
+        assertTrue(index.size() <= 2 * ring.getCapacity() + 1);
+        assertTrue(index.getTermCount() <= 2 * (2 * ring.getCapacity() + 1));
+
+        int newest = ring.getEndSequence() - 1;
+        assertArrayEquals(new int[] {newest, newest - 1}, index.search("+91", 2));
+        // Overwritten rows are not returned even without a minId
+        assertArrayEquals(new int[0], index.search("9800000000", 10));
+    }
+}
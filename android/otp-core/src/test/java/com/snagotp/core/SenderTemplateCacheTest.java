@@ -0,0 +1,56 @@
+package com.snagotp.core;
+
+import static com.snagotp.core.TestMessages.describe;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * A learned template answers for its sender only while the built-in formats are the whole rule set
+ */
+public class SenderTemplateCacheTest {
+    private static final int SERVICE = 7;
+
+    @After
+    public void clearRules() {
+        OtpExtractor.setCustomRules(null);
+    }
+
+    @Test
+    public void learnedTemplateAnswersTheNextMessage() {
+        SenderTemplateCache cache = new SenderTemplateCache();
+        assertEquals("1:482913@12-18", describe(cache.find(SERVICE, "Your OTP is 482913. Ref 7788")));
+        assertEquals(1, cache.size());
+        long hits = ExtractionMetrics.getInstance().getTemplateHits();
+        assertEquals("1:105230@12-18", describe(cache.find(SERVICE, "Your OTP is 105230. Ref 7788")));
+        assertEquals(hits + 1, ExtractionMetrics.getInstance().getTemplateHits());
+    }
+
+    @Test
+    public void userRuleOutranksLearnedTemplate() {
+        SenderTemplateCache cache = new SenderTemplateCache();
+        cache.find(SERVICE, "Your OTP is 482913. Ref 7788");
+
+        // The template would still answer with the OTP, but the user rule ranks above it
+        OtpExtractor.setCustomRules(Collections.singletonList(new OtpRule("Ref", 5, OtpRule.Anchor.KEYWORD,
+                Collections.singletonList("ref"), OtpRule.Charset.DIGITS, 4, 4, 0, null)));
+        assertEquals("6:7788@24-28", describe(cache.find(SERVICE, "Your OTP is 105230. Ref 7788")));
+    }
+
+    @Test
+    public void ruleChangeClearsLearnedTemplates() {
+        SenderTemplateCache cache = new SenderTemplateCache();
+        cache.find(SERVICE, "Your OTP is 482913. Ref 7788");
+        OtpExtractor.setCustomRules(Collections.singletonList(new OtpRule("Ref", 5, OtpRule.Anchor.KEYWORD,
+                Collections.singletonList("ref"), OtpRule.Charset.DIGITS, 4, 4, 0, null)));
+        OtpExtractor.setCustomRules(null);
+
+        long hits = ExtractionMetrics.getInstance().getTemplateHits();
+        assertEquals("1:105230@12-18", describe(cache.find(SERVICE, "Your OTP is 105230. Ref 7788")));
+        // Found by the full scan and learned again
+        assertEquals(hits, ExtractionMetrics.getInstance().getTemplateHits());
+        assertEquals(1, cache.size());
+    }
+}
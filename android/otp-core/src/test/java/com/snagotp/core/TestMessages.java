@@ -0,0 +1,29 @@
+package com.snagotp.core;
+
+import java.util.Random;
+
+/**
+ * Helpers shared by the randomized matcher tests: seeded messages built from a token list, and a
+ * match rendered as a string so two matchers can be compared with assertEquals
+ */
+final class TestMessages {
+    private TestMessages() {
+        // Utility class
+    }
+
+    /** Up to maxTokens - 1 tokens drawn from tokens and concatenated */
+    static String tokenSoup(Random random, String[] tokens, int maxTokens) {
+        StringBuilder builder = new StringBuilder();
+        int count = random.nextInt(maxTokens);
+        for (int i = 0; i < count; i++) {
+            builder.append(tokens[random.nextInt(tokens.length)]);
+        }
+        return builder.toString();
+    }
+
+    /** "pattern:code@start-end", or null when nothing matched */
+    static String describe(OtpMatch match) {
+        return match == null ? null
+                : match.getPatternIndex() + ":" + match.getCode() + "@" + match.getStart() + "-" + match.getEnd();
+    }
+}